@@ -3,19 +3,28 @@ package ca.rk.mappalinguarum.model;
 import java.io.*;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.xml.parsers.*;
 
 import org.xml.sax.*;
 import org.xml.sax.helpers.*;
 
 import ca.rk.mappalinguarum.exceptions.*;
+import ca.rk.mappalinguarum.model.interfaces.ILocationListener;
 import ca.rk.mappalinguarum.model.phoneme.Consonant;
 import ca.rk.mappalinguarum.model.phoneme.PhonemeInventory;
 import ca.rk.mappalinguarum.model.phoneme.Vowel;
+import ca.rk.mappalinguarum.util.PhaseProfiler;
 
 /**
  * Data is parsed, handled, and stored in here
  * 
+ * the phoneme database is parsed alongside the language data rather than before it: phonemes are read
+ * with only their IPA symbols, and described from the database as each language is finished, waiting
+ * for the database only if it's still parsing; each finished Location is then passed to the
+ * ILocationListener, if there is one, so that it can be shown before the rest are parsed
+ * 
  * @author RK
  */
 public class MapData {
@@ -26,7 +35,13 @@ public class MapData {
 	private File fileToParse;
 	private List<Location> locations = new ArrayList<Location>();
 	private DefaultHandler handler;
-	private PhonemeDatabase phonemeDatabase;
+	private CompletableFuture<PhonemeDatabase> phonemeDatabase;
+	private ILocationListener listener;
+	/**
+	 * phonemes read from the data, waiting to be described from the phoneme database
+	 */
+	private List<Consonant> unresolvedConsonants = new ArrayList<Consonant>();
+	private List<Vowel> unresolvedVowels = new ArrayList<Vowel>();
 	private boolean isParsed = false;
 
 	/**
@@ -37,9 +52,37 @@ public class MapData {
 	 * @throws IOException the exception is propagated
 	 */
 	public MapData() throws ParserConfigurationException, InvalidXMLException, IOException {
+		this( PhonemeDatabase.parseAsync() );
+	}
+	
+	/**
+	 * constructor builds data from default file path, with a phoneme database that may still be parsing
+	 * 
+	 * @param phonemes the phoneme database, which is waited for once the first language is parsed
+	 * @throws ParserConfigurationException the exception is propagated from SAXParser, or from the phoneme database
+	 * @throws InvalidXMLException the exception is propagated, or from the phoneme database
+	 * @throws IOException the exception is propagated, or from the phoneme database
+	 */
+	public MapData(CompletableFuture<PhonemeDatabase> phonemes)
+			throws ParserConfigurationException, InvalidXMLException, IOException {
+		this(phonemes, null);
+	}
+	
+	/**
+	 * constructor builds data from default file path, passing each Location on as soon as it's parsed
+	 * 
+	 * @param phonemes the phoneme database, which is waited for once the first language is parsed
+	 * @param l the listener to pass each Location to, on this thread; may be null
+	 * @throws ParserConfigurationException the exception is propagated from SAXParser, or from the phoneme database
+	 * @throws InvalidXMLException the exception is propagated, or from the phoneme database
+	 * @throws IOException the exception is propagated, or from the phoneme database
+	 */
+	public MapData(CompletableFuture<PhonemeDatabase> phonemes, ILocationListener l)
+			throws ParserConfigurationException, InvalidXMLException, IOException {
 		fileToParse = new File(DEFAULT_XML_PATH);
 		handler = DEFAULT_HANDLER;
-		phonemeDatabase = new PhonemeDatabase();
+		phonemeDatabase = phonemes;
+		listener = l;
 		parse(fileToParse, handler);
 	}
 	
@@ -56,7 +99,7 @@ public class MapData {
 			throws ParserConfigurationException, InvalidXMLException, IOException {
 		fileToParse = file;
 		handler = dh;
-		phonemeDatabase = new PhonemeDatabase();
+		phonemeDatabase = PhonemeDatabase.parseAsync();
 		parse(fileToParse, handler);
 	}
 	
@@ -72,7 +115,7 @@ public class MapData {
 			throws ParserConfigurationException, InvalidXMLException, IOException {
 		fileToParse = file;
 		handler = DEFAULT_HANDLER;
-		phonemeDatabase = new PhonemeDatabase();
+		phonemeDatabase = PhonemeDatabase.parseAsync();
 		parse(fileToParse, handler);
 	}
 	
@@ -89,7 +132,7 @@ public class MapData {
 			throws ParserConfigurationException, InvalidXMLException, IOException {
 		fileToParse = new File(filename);
 		handler = DEFAULT_HANDLER;
-		phonemeDatabase = new PhonemeDatabase();
+		phonemeDatabase = PhonemeDatabase.parseAsync();
 		parse(fileToParse, handler);
 	}
 	
@@ -109,15 +152,77 @@ public class MapData {
 	private void parse(File file, DefaultHandler dh)
 			throws ParserConfigurationException, InvalidXMLException, IOException {
 		SAXParserFactory factory = SAXParserFactory.newInstance();
+		//includes any wait for the phoneme database, and the listener
+		PhaseProfiler.Phase phase = PhaseProfiler.getInstance().start("language data parse");
 		try {
 			SAXParser parser = factory.newSAXParser();
 			parser.parse(file, dh);
-			isParsed = true;
 		}
 		catch (SAXException se) {
+			//the handler passes on what the phoneme database failed with
+			if (se.getException() instanceof ParserConfigurationException) {
+				throw (ParserConfigurationException) se.getException();
+			}
+			else if (se.getException() instanceof IOException) {
+				throw (IOException) se.getException();
+			}
 			se.printStackTrace();
 			throw new InvalidXMLException();
 		}
+		finally {
+			phase.close();
+		}
+		//describe any phonemes outside a language, and fail if the database did even if there were none
+		resolvePhonemes();
+		isParsed = true;
+	}
+	
+	/**
+	 * describe the phonemes read since the last call, waiting for the phoneme database if it's still parsing
+	 * 
+	 * @throws ParserConfigurationException if the phoneme database failed with it
+	 * @throws InvalidXMLException if the phoneme database failed with it
+	 * @throws IOException if the phoneme database failed with it
+	 * @throws IllegalArgumentException if the database doesn't have a phoneme of the data
+	 */
+	private void resolvePhonemes() throws ParserConfigurationException, InvalidXMLException, IOException {
+		PhonemeDatabase db;
+		try {
+			db = phonemeDatabase.join();
+		}
+		//rethrow what the database's constructor threw, as it was thrown
+		catch (CompletionException ce) {
+			Throwable cause = ce.getCause();
+			if (cause instanceof ParserConfigurationException) {
+				throw (ParserConfigurationException) cause;
+			}
+			else if (cause instanceof InvalidXMLException) {
+				throw (InvalidXMLException) cause;
+			}
+			else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw ce;
+		}
+		
+		for (Consonant c : unresolvedConsonants) {
+			String symbol = c.getIPASymbol();
+			c.setIsVoiced( db.getIsVoiced(symbol) );
+			c.setPlaceOfArticulation( db.getPlaceOfArticulation(symbol) );
+			c.setSecondaryPOA( db.getSecondaryPOA(symbol) );
+			c.setMannerOfArticulation( db.getMannerOfArticulation(symbol) );
+		}
+		for (Vowel v : unresolvedVowels) {
+			String symbol = v.getIPASymbol();
+			v.setVowelFrontness( db.getVowelFrontness(symbol) );
+			v.setVowelHeight( db.getVowelHeight(symbol) );
+			v.setIsRounded( db.getIsRounded(symbol) );
+		}
+		unresolvedConsonants.clear();
+		unresolvedVowels.clear();
 	}
 
 	/**
@@ -223,7 +328,16 @@ public class MapData {
 			if (qName.equalsIgnoreCase("language") ) {
 				lang.setPhonemeInventory(langPhonemeInv);
 				loc.setLanguage(lang);
+				try {
+					resolvePhonemes();
+				}
+				catch (ParserConfigurationException | IOException e) {
+					throw new SAXException(e);
+				}
 				locations.add(loc);
+				if (listener != null) {
+					listener.locationParsed(loc);
+				}
 			}
 
 			String stringifiedChars = charsToStringBuildar.toString();
@@ -263,10 +377,7 @@ public class MapData {
 					}
 					Consonant c = new Consonant();
 					c.setIPASymbol(eachRawConsonant);
-					c.setIsVoiced( phonemeDatabase.getIsVoiced(eachRawConsonant) );
-					c.setPlaceOfArticulation( phonemeDatabase.getPlaceOfArticulation(eachRawConsonant) );
-					c.setSecondaryPOA(phonemeDatabase.getSecondaryPOA(eachRawConsonant) );
-					c.setMannerOfArticulation( phonemeDatabase.getMannerOfArticulation(eachRawConsonant) );
+					unresolvedConsonants.add(c);
 					if (isReadingDialect) {
 						dialectPhonemeInv.addPhoneme(c);
 					}
@@ -281,9 +392,7 @@ public class MapData {
 				for (String eachRawVowel : rawVowels) {
 					Vowel v = new Vowel();
 					v.setIPASymbol(eachRawVowel);
-					v.setVowelFrontness( phonemeDatabase.getVowelFrontness(eachRawVowel) );
-					v.setVowelHeight( phonemeDatabase.getVowelHeight(eachRawVowel) );
-					v.setIsRounded( phonemeDatabase.getIsRounded(eachRawVowel) );
+					unresolvedVowels.add(v);
 					if (isReadingDialect) {
 						dialectPhonemeInv.addPhoneme(v);
 					}
@@ -4,6 +4,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -23,6 +27,7 @@ import ca.rk.mappalinguarum.model.phoneme.PlaceOfArticulation;
 import ca.rk.mappalinguarum.model.phoneme.Vowel;
 import ca.rk.mappalinguarum.model.phoneme.VowelFrontness;
 import ca.rk.mappalinguarum.model.phoneme.VowelHeight;
+import ca.rk.mappalinguarum.util.PhaseProfiler;
 
 
 /**
@@ -60,6 +65,33 @@ public class PhonemeDatabase {
 		parse(fileToParse, DEFAULT_HANDLER);
 	}
 	
+	/**
+	 * start parsing phoneme data from the default file path on the common pool
+	 * 
+	 * @see #parseAsync(Executor)
+	 */
+	public static CompletableFuture<PhonemeDatabase> parseAsync() {
+		return parseAsync( ForkJoinPool.commonPool() );
+	}
+	
+	/**
+	 * start parsing phoneme data from the default file path on another thread
+	 * 
+	 * @param executor where to parse
+	 * @return the parsed database; if parsing fails, completes with a CompletionException around the
+	 * exception the constructor threw
+	 */
+	public static CompletableFuture<PhonemeDatabase> parseAsync(Executor executor) {
+		return CompletableFuture.supplyAsync( () -> {
+			try {
+				return new PhonemeDatabase();
+			}
+			catch (ParserConfigurationException | InvalidXMLException | IOException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+	
 	/**
 	 * Interfaces SAXParser, passing it a file to parse and a DefaultHandler to handle the data
 	 * 
@@ -72,6 +104,7 @@ public class PhonemeDatabase {
 	private void parse(File file, DefaultHandler dh)
 			throws ParserConfigurationException, InvalidXMLException, IOException {
 		SAXParserFactory factory = SAXParserFactory.newInstance();
+		PhaseProfiler.Phase phase = PhaseProfiler.getInstance().start("phoneme parse");
 		try {
 			SAXParser parser = factory.newSAXParser();
 			parser.parse(file, dh);
@@ -81,6 +114,9 @@ public class PhonemeDatabase {
 			se.printStackTrace();
 			throw new InvalidXMLException();
 		}
+		finally {
+			phase.close();
+		}
 	}
 	
 	/**
@@ -0,0 +1,20 @@
+package ca.rk.mappalinguarum.model.interfaces;
+
+import ca.rk.mappalinguarum.model.Location;
+
+/**
+ * an interface for anything that takes Locations as MapData parses them, rather than once it's done
+ * 
+ * @author RK
+ *
+ */
+public interface ILocationListener {
+
+	/**
+	 * called on the parsing thread each time a Location, its language and the language's phonemes
+	 * are complete; the Location isn't changed afterwards
+	 * 
+	 * @param loc the parsed Location
+	 */
+	public void locationParsed(Location loc);
+}
@@ -8,9 +8,12 @@ import org.junit.Test;
 import ca.rk.mappalinguarum.exceptions.InvalidXMLException;
 import ca.rk.mappalinguarum.model.Location;
 import ca.rk.mappalinguarum.model.MapData;
+import ca.rk.mappalinguarum.model.PhonemeDatabase;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -74,4 +77,34 @@ public class MapDataTest {
 			assertFalse( loc.getLanguage().getFeatures().contains(null) );
 		}
 	}
+	
+	/**
+	 * test that a phoneme database that failed to parse fails the data with the database's own exception
+	 */
+	@Test
+	public void testFailedPhonemeDatabase() throws Exception {
+		CompletableFuture<PhonemeDatabase> phonemes = new CompletableFuture<PhonemeDatabase>();
+		phonemes.completeExceptionally( new IOException("phonemes unreadable") );
+		try {
+			new MapData(phonemes);
+			fail("Data parsed without a phoneme database.");
+		}
+		catch (IOException ie) {
+			assertEquals( "phonemes unreadable", ie.getMessage() );
+		}
+	}
+	
+	/**
+	 * test that the listener is passed every Location, in order, each with its language already set
+	 */
+	@Test
+	public void testLocationListener() throws Exception {
+		final List<Location> parsed = new ArrayList<Location>();
+		MapData streamed = new MapData( PhonemeDatabase.parseAsync(), loc -> {
+			assertNotNull( loc.getLanguage() );
+			parsed.add(loc);
+		});
+		assertEquals( streamed.getLocations(), parsed );
+		assertFalse( parsed.isEmpty() );
+	}
 }
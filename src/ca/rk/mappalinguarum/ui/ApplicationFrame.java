@@ -10,12 +10,18 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
@@ -29,6 +35,10 @@ import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
 import ca.rk.mappalinguarum.exceptions.MapInitializationFailureException;
+import ca.rk.mappalinguarum.model.MapData;
+import ca.rk.mappalinguarum.model.PhonemeDatabase;
+import ca.rk.mappalinguarum.util.PhaseProfiler;
+import ca.rk.mappalinguarum.util.tiles.TilePack;
 
 /**
  * encapsulates the Swing frame (i.e. window) in which the application runs
@@ -52,6 +62,15 @@ public class ApplicationFrame extends JFrame {
 	
 	private final int TOOLTIP_INITIAL_DELAY = 0;
 	private final int TOOLTIP_DISMISS_DELAY = 30000;
+	/**
+	 * system property naming a tile pack to load map tiles from instead of OpenStreetMap
+	 */
+	private final String TILE_PACK_PROPERTY = "mappalinguarum.tilepack";
+	private final String DEFAULT_TILE_PACK = "tiles.pack";
+	/**
+	 * system property naming a file to write the startup profile to, as JSON
+	 */
+	private final String PROFILE_PROPERTY = "mappalinguarum.profile";
 
 	private int screenWidth;
 	private int screenHeight;
@@ -75,9 +94,14 @@ public class ApplicationFrame extends JFrame {
 	private ApplicationMode mode = ApplicationMode.MAP;
 	
 	/**
-	 * constructs an ApplicationFrame, setting its dimensions and fields, and calls UI construction methods
+	 * constructs an ApplicationFrame, setting its dimensions and fields, and calls UI construction methods;
+	 * the phoneme database, the language data and the search for map tiles start first, each on its own
+	 * thread; the map is added as soon as the tiles are found, and shows languages as they're parsed
 	 */
 	public ApplicationFrame() {
+		//start the clock the startup profile is measured by
+		PhaseProfiler.getInstance();
+		
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		}
@@ -96,15 +120,21 @@ public class ApplicationFrame extends JFrame {
 			e.printStackTrace();
 		}
 		
-		initializeUI();
+		//read the data and look for map tiles while the window is laid out
+		TextConsole.clear();
+		TextConsole.writeLine("Loading map...");
+		ExecutorService startup = Executors.newCachedThreadPool( runnable -> {
+			Thread thread = new Thread(runnable, "startup");
+			thread.setDaemon(true);
+			return thread;
+		});
+		LocationBatcher batcher = new LocationBatcher();
+		CompletableFuture<PhonemeDatabase> phonemes = PhonemeDatabase.parseAsync(startup);
+		CompletableFuture<MapData> data = CompletableFuture.supplyAsync( () -> Map.parseData(phonemes, batcher), startup );
+		CompletableFuture<TilePack> tiles = CompletableFuture.supplyAsync(this::findTiles, startup);
 		
-		Runnable r = new Runnable() {
-			public void run() {
-				loadMap();
-				addComponentListener( new SizeListener() );
-			}
-		};
-		SwingUtilities.invokeLater(r);
+		initializeUI();
+		loadMap(tiles, data, batcher, startup);
 	}
 	
 	/**
@@ -162,9 +192,6 @@ public class ApplicationFrame extends JFrame {
 		topAndBottomSplitPane.setDividerLocation(0.8);
 		topAndBottomSplitPane.setResizeWeight(0.8);
 		this.add(topAndBottomSplitPane);
-		
-		TextConsole.clear();
-		TextConsole.writeLine("Loading map...");
 
 		//force validate now that UI has been layed out
 		this.validate();
@@ -202,36 +229,145 @@ public class ApplicationFrame extends JFrame {
 	}
 	
 	/**
-	 * initiate the map layer; this is the last stop for uncaught exceptions before main()
+	 * open the tile pack named by the tile pack system property, or if it isn't set, the default one in
+	 * the working directory
+	 * 
+	 * @return the pack, or null if there is none or it can't be read
 	 */
-	private void loadMap() {
-		if (testConnection()) {
-			Runnable r = new Runnable() {
-				public void run() {
-					//initiate map
-					try {
-						map = new Map(controlPanel);
-						map.setPreferredSize( new Dimension( (int) (appWidth * MAP_SIZE_MODIFIER), appHeight) );
-						mapAndControlSplitPane.remove(mapPlaceholder);
-						mapAndControlSplitPane.add(map);
-						controlPanel.initiateControlBoxContents();
-						isMapInitialized = true;
-						TextConsole.writeLine("Map loaded!");
-					}
-					catch (MapInitializationFailureException e) {
-						TextConsole.writeLine("Map failed to initialize.");
-						e.printStackTrace();
-					}
-					//force validate now that UI has been layed out
-					validate();
+	private TilePack openTilePack() {
+		File file = new File( System.getProperty(TILE_PACK_PROPERTY, DEFAULT_TILE_PACK) );
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			TilePack pack = new TilePack(file);
+			TextConsole.writeLine("Loading map tiles offline from " + file + " (" + pack.getTileCount() + " tiles).");
+			return pack;
+		}
+		catch (IOException e) {
+			TextConsole.writeLine("Unable to read tile pack " + file + ". Please check error logs.");
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * find where map tiles will come from: the tile pack if there is one, otherwise OpenStreetMap if it
+	 * can be reached; blocks until the connection test succeeds or times out
+	 * 
+	 * @return the tile pack, or null to load tiles online
+	 * @throws CompletionException around an IOException if there is neither a tile pack nor a connection
+	 */
+	private TilePack findTiles() {
+		PhaseProfiler.Phase phase = PhaseProfiler.getInstance().start("tile probe");
+		try {
+			TilePack pack = openTilePack();
+			if (pack == null && !testConnection()) {
+				throw new CompletionException( new IOException("No tile pack and no connection to OpenStreetMap") );
+			}
+			return pack;
+		}
+		finally {
+			phase.close();
+		}
+	}
+	
+	/**
+	 * add the map once the tiles have been found, and finish loading it once the data is parsed;
+	 * this is the last stop for uncaught exceptions before main()
+	 * 
+	 * @param tiles where map tiles come from, as found by findTiles
+	 * @param data the parsed language data, or null if it couldn't be parsed
+	 * @param batcher the LocationBatcher the data is passed to as it's parsed
+	 * @param startup the executor the data and tiles are loaded on, which also simplifies outlines,
+	 * and is shut down once loading is over
+	 */
+	private void loadMap(final CompletableFuture<TilePack> tiles, CompletableFuture<MapData> data,
+			final LocationBatcher batcher, final ExecutorService startup) {
+		tiles.thenApplyAsync( pack -> addMap(pack, batcher), SwingUtilities::invokeLater )
+			.thenCombineAsync( data, (m, parsedData) -> finishMap(m, parsedData, startup), SwingUtilities::invokeLater )
+			.thenCompose(finished -> finished)
+			.thenRun(this::reportProfile)
+			.whenComplete( (v, e) -> startup.shutdown() )
+			.exceptionally(e -> {
+				if ( tiles.isCompletedExceptionally() ) {
+					TextConsole.writeLine("Unable to connect to OpenStreetMap. The service may be unavailable right now, "
+							+ "your Internet connectivity may be limited, or firewall settings may be blocking the connection. "
+							+ "Please restart the application when the problem is resolved.");
+				}
+				else {
+					TextConsole.writeLine("Map failed to initialize.");
+					e.printStackTrace();
 				}
-			};
-			SwingUtilities.invokeLater(r);
+				reportProfile();
+				return null;
+			});
+	}
+	
+	/**
+	 * build the map and put it in place of the placeholder; must be called on Swing's event thread
+	 * 
+	 * @param pack the tile pack to load tiles from, or null to load them online
+	 * @param batcher the LocationBatcher the data is passed to as it's parsed
+	 * @return the map, or null if it failed to initialize
+	 */
+	private Map addMap(TilePack pack, LocationBatcher batcher) {
+		PhaseProfiler.Phase phase = PhaseProfiler.getInstance().start("map construction");
+		try {
+			map = new Map(controlPanel, pack, batcher);
+			map.setPreferredSize( new Dimension( (int) (appWidth * MAP_SIZE_MODIFIER), appHeight) );
+			mapAndControlSplitPane.remove(mapPlaceholder);
+			mapAndControlSplitPane.add(map);
+			controlPanel.initiateControlBoxContents();
+			isMapInitialized = true;
+			addComponentListener( new SizeListener() );
+		}
+		catch (MapInitializationFailureException e) {
+			TextConsole.writeLine("Map failed to initialize.");
+			e.printStackTrace();
+		}
+		finally {
+			phase.close();
 		}
-		else {
-			TextConsole.writeLine("Unable to connect to OpenStreetMap. The service may be unavailable right now, "
-					+ "your Internet connectivity may be limited, or firewall settings may be blocking the connection. "
-					+ "Please restart the application when the problem is resolved.");
+		//force validate now that UI has been layed out
+		validate();
+		return map;
+	}
+	
+	/**
+	 * end loading once the data is parsed; must be called on Swing's event thread
+	 * 
+	 * @param m the map, or null if it failed to initialize
+	 * @param parsedData the parsed language data, or null if it couldn't be parsed
+	 * @param executor where the map simplifies its outlines
+	 * @return completes once the map has finished loading
+	 */
+	private CompletableFuture<Void> finishMap(Map m, MapData parsedData, Executor executor) {
+		if (m == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return m.finishLoading(parsedData, executor).thenRun( () -> TextConsole.writeLine("Map loaded!") );
+	}
+	
+	/**
+	 * print how long each phase of startup took to the text console, and write it as JSON to the file
+	 * named by PROFILE_PROPERTY, if set
+	 */
+	private void reportProfile() {
+		PhaseProfiler profiler = PhaseProfiler.getInstance();
+		for (String line : profiler.getSummary()) {
+			TextConsole.writeLine(line);
+		}
+		
+		String path = System.getProperty(PROFILE_PROPERTY);
+		if (path != null) {
+			try {
+				profiler.writeJSON( new File(path) );
+			}
+			catch (IOException e) {
+				TextConsole.writeLine("Unable to write the startup profile to " + path + ".");
+				e.printStackTrace();
+			}
 		}
 	}
 	
@@ -13,6 +13,8 @@ import javax.swing.JTabbedPane;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
 
+import ca.rk.mappalinguarum.model.Location;
+
 /**
  * this is the right-side control panel for controlling the map and displaying language information;
  * 
@@ -154,30 +156,38 @@ public class ControlPanel extends JPanel {
 	}
 	
 	/**
-	 * instantiate a SelectionTracker when ready and deploy components in
-	 * controlBox on the event-dispatch thread
+	 * instantiate a SelectionTracker and have it follow the map's languages, adding checkboxes to
+	 * controlBox on the event-dispatch thread as each batch of languages is delivered
 	 */
 	public void initiateControlBoxContents() {
 		selectionTracker = new SelectionTracker(map);
-		final List<JCheckBox> famCheckBoxes = selectionTracker.getFamilyCheckBoxes();
-		final List<JCheckBox> featureCheckBoxes = selectionTracker.getFeatureCheckBoxes();
-		final List<JCheckBox> langCheckBoxes = selectionTracker.getLanguageCheckBoxes();
+		map.getLocationBatcher().subscribe(this::addLocations);
+	}
+	
+	/**
+	 * add checkboxes for a batch of languages, and for families and features not seen before
+	 * 
+	 * @param locs the Locations delivered by the map's LocationBatcher
+	 */
+	private void addLocations(List<Location> locs) {
+		final int families = selectionTracker.getFamilyCheckBoxes().size();
+		final int features = selectionTracker.getFeatureCheckBoxes().size();
+		final int languages = selectionTracker.getLanguageCheckBoxes().size();
+		selectionTracker.addLocations(locs);
 		
-		SwingUtilities.invokeLater(new Runnable() {
-			@Override
-			public void run() {
-				for (JCheckBox cb : famCheckBoxes) {
-					familyControlPanel.add(cb);
-				}
-				for (JCheckBox cb : featureCheckBoxes) {
-					featureControlPanel.add(cb);
-				}
-				for (JCheckBox cb : langCheckBoxes) {
-					languageControlPanel.add(cb);
-				}
-				validate();
-			}
-		});
+		addCheckBoxes(familyControlPanel, selectionTracker.getFamilyCheckBoxes(), families);
+		addCheckBoxes(featureControlPanel, selectionTracker.getFeatureCheckBoxes(), features);
+		addCheckBoxes(languageControlPanel, selectionTracker.getLanguageCheckBoxes(), languages);
+		validate();
+	}
+	
+	/**
+	 * add the checkboxes of a list from an index on to a panel
+	 */
+	private static void addCheckBoxes(JPanel panel, List<JCheckBox> checkBoxes, int from) {
+		for (JCheckBox cb : checkBoxes.subList( from, checkBoxes.size() )) {
+			panel.add(cb);
+		}
 	}
 
 	//accessors
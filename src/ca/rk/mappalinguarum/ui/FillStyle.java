@@ -0,0 +1,36 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.awt.Color;
+
+import ca.rk.mappalinguarum.util.textures.AnchoredTexture;
+
+/**
+ * how a language polygon is filled: with a flat colour, or with a texture; never modified once
+ * constructed, so it can be read on rendering threads
+ * 
+ * @author RK
+ *
+ */
+public class FillStyle {
+
+	private final Color colour;
+	private final AnchoredTexture texture;
+	
+	/**
+	 * constructs a FillStyle
+	 * 
+	 * @param c the flat colour
+	 * @param t the texture to fill with instead of the colour, or null to fill with the colour
+	 */
+	public FillStyle(Color c, AnchoredTexture t) {
+		colour = c;
+		texture = t;
+	}
+	
+	//accessors
+	public Color getColour() { return colour; }
+	/**
+	 * @return the texture to fill with, or null for the flat colour
+	 */
+	public AnchoredTexture getTexture() { return texture; }
+}
@@ -0,0 +1,138 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+/**
+ * paces a component's work to the display's refresh rate
+ *
+ * input handlers only record what happened and call requestFrame(); at most once per refresh interval
+ * a timer then runs the frame callback, which acts on the latest state, so any number of events
+ * between two frames cost one frame of work; the timer only runs while frames are being requested
+ *
+ * also keeps statistics on how long frames and paints take; all methods must be called on the event thread
+ *
+ * @author RK
+ *
+ */
+public class FrameScheduler implements ActionListener {
+
+	private static final int DEFAULT_REFRESH_RATE = 60;
+	/**
+	 * weight of the newest sample in the moving averages
+	 */
+	private static final double AVERAGE_WEIGHT = 0.1;
+
+	private Timer timer;
+	private Runnable frame;
+	private final int frameInterval;
+	private boolean isFrameRequested = false;
+	private long lastFrameTime = 0;
+
+	private long frameCount = 0;
+	private long coalescedCount = 0;
+	private double averageFrameMillis = 0;
+	private double averagePaintMillis = 0;
+	private double lastPaintMillis = 0;
+	private double maxPaintMillis = 0;
+
+	/**
+	 * constructs a FrameScheduler that runs frames at the refresh rate of the default screen,
+	 * or at 60 Hz if that's unknown
+	 *
+	 * @param f the work to do once per frame
+	 */
+	public FrameScheduler(Runnable f) {
+		frame = f;
+		frameInterval = 1000 / getRefreshRate();
+		timer = new Timer(frameInterval, this);
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * @return refresh rate of the default screen in Hz
+	 */
+	private static int getRefreshRate() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return DEFAULT_REFRESH_RATE;
+		}
+		DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment()
+									.getDefaultScreenDevice().getDisplayMode();
+		if (mode.getRefreshRate() == DisplayMode.REFRESH_RATE_UNKNOWN) {
+			return DEFAULT_REFRESH_RATE;
+		}
+		return mode.getRefreshRate();
+	}
+
+	/**
+	 * ask for a frame to run at the next refresh; requests made before it runs are merged into it
+	 */
+	public void requestFrame() {
+		if (isFrameRequested) {
+			++coalescedCount;
+			return;
+		}
+		isFrameRequested = true;
+		if (!timer.isRunning()) {
+			//a frame that follows an idle spell still waits out the rest of the interval since the last one
+			final long sinceLastFrame = (System.nanoTime() - lastFrameTime) / 1000000;
+			timer.setInitialDelay( (int) Math.max(0, Math.min(frameInterval, frameInterval - sinceLastFrame)) );
+			timer.start();
+		}
+	}
+
+	/**
+	 * timer callback; runs one frame, or stops the timer if no frame was requested since the last one
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		if (!isFrameRequested) {
+			timer.stop();
+			return;
+		}
+		isFrameRequested = false;
+		final long start = System.nanoTime();
+		frame.run();
+		lastFrameTime = System.nanoTime();
+
+		++frameCount;
+		averageFrameMillis = average(averageFrameMillis, (lastFrameTime - start) / 1e6);
+	}
+
+	/**
+	 * record how long a paint took; paints are carried out by Swing after a frame marks regions dirty
+	 *
+	 * @param nanos duration of the paint in nanoseconds
+	 */
+	public void recordPaint(long nanos) {
+		lastPaintMillis = nanos / 1e6;
+		averagePaintMillis = average(averagePaintMillis, lastPaintMillis);
+		maxPaintMillis = Math.max(maxPaintMillis, lastPaintMillis);
+	}
+
+	private static double average(double average, double sample) {
+		if (average == 0) {
+			return sample;
+		}
+		return average + AVERAGE_WEIGHT * (sample - average);
+	}
+
+	//accessors
+	/**
+	 * @return time between frames in milliseconds, the budget one frame's work has to fit in
+	 */
+	public int getFrameInterval() { return frameInterval; }
+	public long getFrameCount() { return frameCount; }
+	/**
+	 * @return how many frame requests were merged into a frame already requested
+	 */
+	public long getCoalescedCount() { return coalescedCount; }
+	public double getAverageFrameMillis() { return averageFrameMillis; }
+	public double getAveragePaintMillis() { return averagePaintMillis; }
+	public double getLastPaintMillis() { return lastPaintMillis; }
+	public double getMaxPaintMillis() { return maxPaintMillis; }
+}
@@ -4,7 +4,7 @@ import java.awt.Color;
 import java.awt.Point;
 import java.awt.Polygon;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 
 import ca.rk.mappalinguarum.exceptions.IllegalPolygonException;
@@ -14,6 +14,8 @@ import ca.rk.mappalinguarum.ui.interfaces.IObservable;
 import ca.rk.mappalinguarum.ui.interfaces.IObserver;
 import ca.rk.mappalinguarum.util.Colour;
 import ca.rk.mappalinguarum.util.RandomColourGenerator;
+import ca.rk.mappalinguarum.util.geometry.ProjectedRings;
+import ca.rk.mappalinguarum.util.geometry.VertexBuffer;
 import ca.rk.mappalinguarum.util.textures.TexturePattern;
 
 
@@ -30,15 +32,25 @@ public class LanguagePolygon implements IObserver, IObservable {
 	private Location encapsulatedLocation;
 	private Colour colour;
 	private Colour familyDerivedColour;
-	private List<Polygon> polygons;
+	/**
+	 * rings in world-pixel coordinates; panning only changes where the world origin lies on screen,
+	 * so these are replaced only when the map's VertexBuffer is reprojected, and never modified,
+	 * so that overlay tiles can be rendered from them off the event thread
+	 */
+	private volatile ProjectedRings projectedRings;
+	/**
+	 * index of this polygon's first ring in the map's VertexBuffer; its rings are stored consecutively
+	 */
+	private int firstRing;
+	private int ringCount;
+	private int projectionId = -1;
 	private TexturePattern texture;
-	private double[] latitudes;
-	private double[] longitudes;
-	private ArrayList<Integer> xPoints;
-	private ArrayList<Integer> yPoints;
+	/**
+	 * fill styles by view mode, then normal or highlighted, then flat or textured
+	 */
+	private FillStyle[][][] styles = new FillStyle[ViewMode.values().length][2][2];
 	private List<IObserver> observers;
 	private boolean isHighlighted;
-	private List<Polygon> copiesOnScreen;
 	
 	/**
 	 * constructs a LanguagePolygon; remembers the Map container and takes the Location input
@@ -55,97 +67,71 @@ public class LanguagePolygon implements IObserver, IObservable {
 		familyDerivedColour = RandomColourGenerator.getInstance().mixColours(familyDerivedColour, colour);
 		isHighlighted = false;
 		observers = new ArrayList<IObserver>();
-		copiesOnScreen = new ArrayList<Polygon>();
 		
-		update();
-		if (polygons == null || polygons.isEmpty()) {
-			return;
+		try {
+			ringCount = registerRings( encapsulatedLocation, map.getVertexBuffer() );
+		}
+		catch(IllegalPolygonException ipe) {
+			TextConsole.writeLine("There was an error calculating one of the language areas.");
 		}
-		texture = new TexturePattern(map, colour, familyDerivedColour);
-		addObserver(texture);
 	}
 	
 	/**
-	 * construct list of polygons from Location information and map zoom level
-	 * return null if the polygon has fewer than three vertices within the viewport
+	 * add the rings of the input Location to the VertexBuffer
+	 * return 0 if the polygon has fewer than three vertices
 	 * 
 	 * @param l the Location object to use
-	 * @param zoomLevel the current zoom level in the map viewer
-	 * @return one or more Polygons, empty list if there's nothing to draw
+	 * @param buffer the VertexBuffer shared by every LanguagePolygon on the map
+	 * @return number of rings added, 0 if there's nothing to draw
 	 * @throws IllegalPolygonException if an illegal polygon is detected
 	 */
-	private List<Polygon> constructPolygons(Location l, int zoomLevel) throws IllegalPolygonException {
+	private int registerRings(Location l, VertexBuffer buffer) throws IllegalPolygonException {
 		List<Location.LatLongSet> latlongSets = l.getLatLongSets();
-		List<Polygon> polys = new ArrayList<Polygon>(latlongSets.size());
 		for (Location.LatLongSet latlong : latlongSets) {
-			latitudes = latlong.getLatitudes();
-			longitudes = latlong.getLongitudes();
-			if (xPoints == null) {
-				xPoints = new ArrayList<Integer>(longitudes.length);
-			}
-			if (yPoints == null) {
-				yPoints = new ArrayList<Integer>(latitudes.length);
-			}
-			
-			xPoints.clear();
-			yPoints.clear();
-			
-			Point point;
-			for (int i = 0; i < latitudes.length; ++i) {
-				//force the map viewer to return a non-null Point even if it's outside of the viewport
-				point = map.getMapPosition(latitudes[i], longitudes[i], false);
-				
-				xPoints.add(point.x);
-				yPoints.add(point.y);
-			}
-			
-			//unequal number of x and y points means something is wrong
-			if ( xPoints.size() != yPoints.size() ) {
+			//unequal number of latitudes and longitudes means something is wrong
+			if (latlong.getLatitudes().length != latlong.getLongitudes().length) {
 				throw new IllegalPolygonException();
 			}
-			
 			//a polygon with fewer than three vertices makes no sense
-			if (xPoints.size() < 3) {
-				return null;
+			if (latlong.getLatitudes().length < 3) {
+				return 0;
 			}
-			
-			//convert ArrayLists to primitive arrays, since Polygon only accepts those
-			int[] xArray = new int[ xPoints.size() ];
-			int[] yArray = new int[ yPoints.size() ];
-			Iterator<Integer> xIterator = xPoints.iterator();
-			Iterator<Integer> yIterator = yPoints.iterator();
-			
-			for (int i = 0; i < xArray.length; ++i) {
-				xArray[i] = xIterator.next();
-				yArray[i] = yIterator.next();
-			}
-			
-			polys.add(new Polygon(xArray, yArray, xArray.length));
 		}
 		
-		return polys;
+		firstRing = buffer.getRingCount();
+		for (Location.LatLongSet latlong : latlongSets) {
+			buffer.addRing( latlong.getLongitudes(), latlong.getLatitudes() );
+		}
+		
+		return latlongSets.size();
 	}
 	
 	/**
-	 * whether the input point is within the polygons
+	 * whether the input point is within the polygons; the map repeats every mapWidth pixels
+	 * horizontally, so the point is folded back into the canonical copy of the world instead of
+	 * testing each copy on screen
 	 * 
-	 * @param p the input point
-	 * @return true if any polygon from this.polygons contains p, otherwise false
+	 * @param p the input point in screen coordinates
+	 * @return true if any of this polygon's rings contains p, otherwise false
 	 */
 	public boolean contains(Point p) {
 		//null polygon contains nothing
-		if (polygons == null || polygons.isEmpty()) {
+		ProjectedRings rings = getProjectedRings();
+		if (rings == null) {
 			return false;
 		}
+		
+		//polygons are kept in world-pixel coordinates, within [0, mapWidth) as the VertexBuffer clamps them
+		final int mapWidth = map.getMapWidth();
+		final int worldX = Math.floorMod(p.x - map.getOriginX(), mapWidth);
+		final int worldY = p.y - map.getOriginY();
 
-		for (Polygon poly : polygons) {
-			if (poly.contains(p)) {
-				return true;
+		for (int i = 0; i < rings.getRingCount(); ++i) {
+			if (worldY < rings.getMinY(i) || worldY > rings.getMaxY(i)) {
+				continue;
 			}
-		}
-		
-		for (Polygon poly : copiesOnScreen) {
-			if (poly.contains(p)) {
+			Polygon poly = rings.getRing(i);
+			if (poly.contains(worldX, worldY)) {
 				return true;
 			}
 		}
@@ -153,20 +139,34 @@ public class LanguagePolygon implements IObserver, IObservable {
 		return false;
 	}
 
+	/**
+	 * copies this polygon's rings, at the level of detail the map is drawn at, out of the map's
+	 * VertexBuffer into a new ProjectedRings, projecting the buffer first if needed;
+	 * does nothing unless the buffer has been reprojected since the last copy
+	 */
 	@Override
 	public void update() {
-		try {
-			polygons = constructPolygons( encapsulatedLocation, map.getZoom() );
-			if (polygons == null) {
-				return;
-			}
-			for (Polygon poly : polygons) {
-				poly.invalidate();
-			}
+		if (ringCount == 0) {
+			return;
 		}
-		catch(IllegalPolygonException ipe) {
-			TextConsole.writeLine("There was an error calculating one of the language areas.");
+		VertexBuffer buffer = map.getVertexBuffer();
+		map.projectVertexBuffer();
+		if (buffer.getProjectionId() == projectionId) {
+			return;
 		}
+		
+		final int[] xs = buffer.getProjectedX();
+		final int[] ys = buffer.getProjectedY();
+		Polygon[] polys = new Polygon[ringCount];
+		for (int i = 0; i < ringCount; ++i) {
+			//at low zoom levels the buffer may hold a simplified ring with fewer vertices
+			final int offset = buffer.getProjectedRingOffset(firstRing + i);
+			final int length = buffer.getProjectedRingLength(firstRing + i);
+			polys[i] = new Polygon(Arrays.copyOfRange(xs, offset, offset + length),
+									Arrays.copyOfRange(ys, offset, offset + length), length);
+		}
+		projectedRings = new ProjectedRings(polys);
+		projectionId = buffer.getProjectionId();
 	}
 
 	/**
@@ -231,49 +231,74 @@ public class LanguagePolygon implements IObserver, IObservable {
 	 * @return a Color object
 	 */
 	public Color getColor() {
-		if (map.getViewMode() == ViewMode.FAMILIES) {
-			if (isHighlighted) {
-				return Colour.lightenColour(familyDerivedColour).toColor();
-			}
-			return familyDerivedColour.toColor();
-		}
-		if (isHighlighted) {
-			Color c = Colour.lightenColour(colour).toColor();
-			return c;
-		}
-		return colour.toColor();
+		return getColor(isHighlighted);
+	}
+	
+	/**
+	 * gets a Color object depending on the ViewMode, as if the LanguagePolygon were highlighted or not
+	 * 
+	 * @param isHighlighted true for a lightened shade
+	 * @return a Color object
+	 */
+	public Color getColor(boolean isHighlighted) {
+		return getStyle( map.getViewMode(), isHighlighted, false ).getColour();
 	}
 	
 	/**
-	 * deep-copy a Polygon
+	 * look up how to fill this polygon; each style is created the first time it's asked for and kept,
+	 * since a polygon's colours never change
 	 * 
-	 * @param poly original polygon
-	 * @return a copy
+	 * @param viewMode the view mode to fill in
+	 * @param isHighlighted true for lightened colours
+	 * @param isTextured true to fill with a texture rather than a flat colour
+	 * @return the FillStyle for the combination
 	 */
-	public static Polygon copy(Polygon poly) {
-		Polygon copy = new Polygon(poly.xpoints, poly.ypoints, poly.npoints);
-		return copy;
+	public FillStyle getStyle(ViewMode viewMode, boolean isHighlighted, boolean isTextured) {
+		final int highlighted = isHighlighted ? 1 : 0;
+		final int textured = isTextured ? 1 : 0;
+		FillStyle style = styles[viewMode.ordinal()][highlighted][textured];
+		if (style == null) {
+			style = createStyle(viewMode, isHighlighted, isTextured);
+			styles[viewMode.ordinal()][highlighted][textured] = style;
+		}
+		return style;
+	}
+	
+	/**
+	 * in family mode, fill with the family-derived colour; otherwise, with own colour;
+	 * if highlighted in either case, with a lightened shade of the underlying colour
+	 */
+	private FillStyle createStyle(ViewMode viewMode, boolean isHighlighted, boolean isTextured) {
+		Colour base = viewMode == ViewMode.FAMILIES ? familyDerivedColour : colour;
+		Color flat = isHighlighted ? Colour.lightenColour(base).toColor() : base.toColor();
+		if (!isTextured) {
+			return new FillStyle(flat, null);
+		}
+		return new FillStyle( flat, getTexture().getAnchoredTexture(viewMode, isHighlighted) );
 	}
 	
 	//accessors
 	public Location getEncapsulatedLocation() { return encapsulatedLocation; }
+	public Colour getColour() { return colour; }
+	public Colour getFamilyDerivedColour() { return familyDerivedColour; }
 	public Language getEncapsulatedLanguage() { return encapsulatedLocation.getLanguage(); }
-	public List<Polygon> getPolygons() {
-		if (polygons == null)
-		{
-			update();
+	/**
+	 * @return this polygon's rings at the map's current zoom level, or null if there's nothing to draw
+	 */
+	public ProjectedRings getProjectedRings() {
+		update();
+		return projectedRings;
+	}
+	/**
+	 * @return this polygon's texture, fetched from the map's TextureCache on first use
+	 */
+	public TexturePattern getTexture() {
+		if (texture == null) {
+			texture = map.getTextureCache().get(colour, familyDerivedColour);
 		}
-		return polygons;
+		return texture;
 	}
-	public TexturePattern getTexture() { return texture; }
 	public boolean getIsHighlighted() { return isHighlighted; }
 	
-	public LanguagePolygon setIsHighlighted(boolean b) {
-		if (b != isHighlighted) {
-			notifyObservers();
-		}
-		isHighlighted = b;
-		return this;
-	}
-	public List<Polygon> getPolygonCopiesOnScreen() { return copiesOnScreen; }
+	public LanguagePolygon setIsHighlighted(boolean b) { isHighlighted = b; return this; }
 }
@@ -0,0 +1,100 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+import ca.rk.mappalinguarum.model.Location;
+import ca.rk.mappalinguarum.model.interfaces.ILocationListener;
+
+/**
+ * carries Locations from the thread parsing MapData to the event thread, in batches
+ *
+ * Locations parsed while the event thread is busy are gathered into one batch, and each batch is handed
+ * to every subscriber in a single event, so the map and the control panel catch up on however many
+ * languages were parsed at once instead of one event per language; a subscriber that comes late is
+ * first handed everything delivered so far, as one batch
+ *
+ * locationParsed may be called on any thread; everything else must be called on the event thread
+ *
+ * @author RK
+ *
+ */
+public class LocationBatcher implements ILocationListener {
+
+	/**
+	 * parsed Locations waiting for the next delivery, guarded by this
+	 */
+	private List<Location> pending = new ArrayList<Location>();
+	private List<Location> delivered = new ArrayList<Location>();
+	private List<Consumer<List<Location>>> subscribers = new ArrayList<Consumer<List<Location>>>();
+	private long batchCount = 0;
+
+	/**
+	 * queue a parsed Location, scheduling a delivery if none is scheduled yet
+	 *
+	 * @see ILocationListener
+	 */
+	@Override
+	public void locationParsed(Location loc) {
+		final boolean isScheduled;
+		synchronized (this) {
+			isScheduled = !pending.isEmpty();
+			pending.add(loc);
+		}
+		if (!isScheduled) {
+			SwingUtilities.invokeLater(this::flush);
+		}
+	}
+
+	/**
+	 * deliver every Location queued since the last delivery
+	 */
+	private void flush() {
+		List<Location> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = new ArrayList<Location>();
+		}
+		deliver(batch);
+	}
+
+	/**
+	 * hand a batch of Locations to every subscriber, in the order they subscribed
+	 *
+	 * @param batch Locations that haven't been delivered before
+	 */
+	private void deliver(List<Location> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		delivered.addAll(batch);
+		++batchCount;
+		List<Location> view = Collections.unmodifiableList(batch);
+		for (Consumer<List<Location>> subscriber : subscribers) {
+			subscriber.accept(view);
+		}
+	}
+
+	/**
+	 * take every batch from now on, starting with everything delivered so far
+	 *
+	 * @param subscriber called on the event thread with each batch
+	 */
+	public void subscribe(Consumer<List<Location>> subscriber) {
+		subscribers.add(subscriber);
+		if (!delivered.isEmpty()) {
+			subscriber.accept( Collections.unmodifiableList( new ArrayList<Location>(delivered) ) );
+		}
+	}
+
+	//accessors
+	/**
+	 * @return every Location delivered so far, in the order parsed
+	 */
+	public List<Location> getDelivered() { return Collections.unmodifiableList(delivered); }
+	public long getBatchCount() { return batchCount; }
+}
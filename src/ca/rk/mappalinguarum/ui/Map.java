@@ -3,15 +3,14 @@ package ca.rk.mappalinguarum.ui;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.Polygon;
-import java.awt.RenderingHints;
-import java.awt.TexturePaint;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
-import java.awt.geom.Rectangle2D;
+import java.awt.event.MouseWheelEvent;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.swing.BorderFactory;
 import javax.swing.SwingUtilities;
@@ -21,8 +20,9 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.openstreetmap.gui.jmapviewer.Coordinate;
 import org.openstreetmap.gui.jmapviewer.DefaultMapController;
 import org.openstreetmap.gui.jmapviewer.JMapViewer;
-import org.openstreetmap.gui.jmapviewer.OsmFileCacheTileLoader;
 import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.TileController;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
 
 import ca.rk.mappalinguarum.exceptions.InvalidXMLException;
 import ca.rk.mappalinguarum.exceptions.MapInitializationFailureException;
@@ -31,9 +31,17 @@ import ca.rk.mappalinguarum.model.Language;
 import ca.rk.mappalinguarum.model.LanguageFamily;
 import ca.rk.mappalinguarum.model.Location;
 import ca.rk.mappalinguarum.model.MapData;
+import ca.rk.mappalinguarum.model.PhonemeDatabase;
+import ca.rk.mappalinguarum.model.interfaces.ILocationListener;
 import ca.rk.mappalinguarum.ui.interfaces.IObservable;
 import ca.rk.mappalinguarum.ui.interfaces.IObserver;
-import ca.rk.mappalinguarum.util.textures.TexturePattern;
+import ca.rk.mappalinguarum.util.PhaseProfiler;
+import ca.rk.mappalinguarum.util.geometry.ProjectedRings;
+import ca.rk.mappalinguarum.util.geometry.VertexBuffer;
+import ca.rk.mappalinguarum.util.textures.TextureCache;
+import ca.rk.mappalinguarum.util.tiles.BoundedTileCache;
+import ca.rk.mappalinguarum.util.tiles.DecodingTileLoader;
+import ca.rk.mappalinguarum.util.tiles.TilePack;
 
 
 /**
@@ -59,19 +67,36 @@ public class Map extends JMapViewer implements IObservable {
 	protected final static double MIN_LONGITUDE = -180;
 	protected final static double MAX_LONGITUDE = 180;
 	protected final static int DEFAULT_ZOOM = 4;
+	/**
+	 * how many zoom levels out to look for a loaded tile to stand in for one that isn't loaded
+	 */
+	private final static int MAX_FALLBACK_LEVELS = 4;
 
 	private ViewMode viewMode;
 	private SelectionMode selectionMode;
 	private List<IObserver> observers;
 	private List<LanguagePolygon> langPolygons;
+	/**
+	 * the rings of every LanguagePolygon, projected in bulk whenever the zoom level changes
+	 */
+	private VertexBuffer vertexBuffer;
+	private TextureCache textureCache;
+	private OverlayRenderer overlayRenderer;
+	private OverlayCache overlayCache;
 
 	private List<LanguagePolygon> selectedPolygons;
 	private List<LanguageFamily> criteriaFamilies;
 	private List<Feature> criteriaFeatures;
 	private List<Location> criteriaLocations;
+	/**
+	 * hash of which LanguagePolygons are visible, so cached renderings of a selection can be told apart
+	 * from those of another, and reused when the selection comes back
+	 */
+	private long selectionHash = 0;
 	
 	private LanguagePolygon mouseoveredLP;
 	private MapData data;
+	private LocationBatcher locationBatcher;
 	private ControlPanel controlPanel;
 	
 	private boolean isParseFailed = false;
@@ -80,23 +105,57 @@ public class Map extends JMapViewer implements IObservable {
 	 */
 	private boolean simpleRender = true;
 	
+	private FrameScheduler frameScheduler;
+	private RenderQualityPolicy qualityPolicy;
+	private TilePrefetcher tilePrefetcher;
+	private TileLoadScheduler tileScheduler;
+	private BoundedTileCache tileCache;
+	/**
+	 * where the mouse was last seen over the map, or null if it's outside
+	 */
+	private Point pointer;
+	private boolean isPointerMoved = false;
+	private int wheelRotation = 0;
+	private Point wheelPoint;
+	/**
+	 * region to repaint on the next frame, empty while right <= left
+	 */
+	private int dirtyLeft = Integer.MAX_VALUE;
+	private int dirtyTop = Integer.MAX_VALUE;
+	private int dirtyRight = Integer.MIN_VALUE;
+	private int dirtyBottom = Integer.MIN_VALUE;
+	
 	/**
-	 * constructs a Map and initializes settings; loads MapData;
-	 * handles ParserConfigurationException / InvalidXMLException / IOException from the parser
+	 * constructs a Map and initializes settings; the language data is parsed elsewhere, and the map shows
+	 * each batch of languages as it's delivered; finishLoading must be called once parsing is over
 	 * 
 	 * @param cp the ControlPanel object to associate with this
+	 * @param pack the tile pack to load tiles from; if null, tiles come from the disk cache and OpenStreetMap
+	 * @param batcher the LocationBatcher the parser passes Locations to
+	 * @see #parseData(CompletableFuture, ILocationListener)
 	 */
-	public Map(ControlPanel cp) {
+	public Map(ControlPanel cp, TilePack pack, LocationBatcher batcher) {
 		viewMode = DEFAULT_VIEW_MODE;
 		selectionMode = DEFAULT_SELECTION_MODE;
 		controlPanel = cp;
 		controlPanel.setMap(this);
 		observers = new ArrayList<IObserver>();
+		vertexBuffer = new VertexBuffer();
+		textureCache = new TextureCache();
+		overlayRenderer = new OverlayRenderer();
+		overlayCache = new OverlayCache(this);
+		frameScheduler = new FrameScheduler(this::runFrame);
+		qualityPolicy = new RenderQualityPolicy(this);
+		tilePrefetcher = new TilePrefetcher(this);
 		new MapTroller(this);
 		ToolTipManager.sharedInstance().registerComponent(this);
 		setBorder(BorderFactory.createEtchedBorder());
+		tileCache = new BoundedTileCache(BoundedTileCache.DEFAULT_BUDGET, true);
+		tileController.setTileCache(tileCache);
 		try {
-			setTileLoader( new OsmFileCacheTileLoader(this) );
+			DecodingTileLoader loader = pack == null ? new DecodingTileLoader(this) : new DecodingTileLoader(this, pack);
+			tileScheduler = new TileLoadScheduler(this, loader);
+			setTileLoader(tileScheduler);
 		}
 		catch (SecurityException e) {
 			TextConsole.writeLine("Failure to access system property for security reasons. Please check "
@@ -110,46 +169,109 @@ public class Map extends JMapViewer implements IObservable {
 			throw new MapInitializationFailureException(e);
 		}
 		
+		langPolygons = new ArrayList<LanguagePolygon>();
+		selectedPolygons = new ArrayList<LanguagePolygon>();
+		criteriaFamilies = new ArrayList<LanguageFamily>();
+		criteriaFeatures = new ArrayList<Feature>();
+		criteriaLocations = new ArrayList<Location>();
+		selectionHash = hashPolygons(langPolygons);
+		locationBatcher = batcher;
+		locationBatcher.subscribe(this::addLocations);
+		
+		setDisplayPositionByLatLon(DEFAULT_LATITUDE, DEFAULT_LONGITUDE, DEFAULT_ZOOM);
+		repaint();
+	}
+	
+	/**
+	 * add a LanguagePolygon for each of a batch of newly parsed Locations, selecting those that meet
+	 * the current criteria; their rings are appended to the VertexBuffer, so only they are projected
+	 * on the next paint
+	 * 
+	 * @param locs the Locations delivered by the LocationBatcher
+	 */
+	private void addLocations(List<Location> locs) {
+		if (isParseFailed) {
+			return;
+		}
+		final int first = langPolygons.size();
+		PhaseProfiler.Phase phase = PhaseProfiler.getInstance().start("language polygons");
 		try {
-			data = new MapData().getParsedData();
-			List<Location> locs = data.getLocations();
-			
 			for (Location l : locs) {
-				addObserver(new LanguagePolygon(this, l));
+				LanguagePolygon lp = new LanguagePolygon(this, l);
+				addObserver(lp);
+				langPolygons.add(lp);
+				if ( meetsSelectedCriteria(lp) ) {
+					selectedPolygons.add(lp);
+				}
 			}
-			
-			langPolygons = new ArrayList<LanguagePolygon>();
-			for (IObserver obs : observers) {
-				langPolygons.add( (LanguagePolygon) obs);
+		}
+		finally {
+			phase.close();
+		}
+		if (!simpleRender) {
+			textureCache.generateAll( langPolygons.subList( first, langPolygons.size() ) );
+		}
+		selectionHash = hashPolygons( getVisiblePolygons() );
+		repaint();
+	}
+	
+	/**
+	 * end loading once the language data is parsed, after its last batch of Locations has been delivered;
+	 * now that every ring is in the VertexBuffer, outlines are simplified for low zoom levels on the input
+	 * executor, since that's a pass over every vertex, and drawn from once they're back on the event thread
+	 * 
+	 * @param parsedData the language data, or null if it couldn't be parsed, in which case only map tiles are drawn
+	 * @param executor where to simplify outlines
+	 * @return completes on the event thread once the simplified outlines are in use
+	 */
+	public CompletableFuture<Void> finishLoading(MapData parsedData, Executor executor) {
+		data = parsedData;
+		isParseFailed = data == null;
+		repaint();
+		if (isParseFailed) {
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		final int tileSize = getTileSize();
+		return CompletableFuture.supplyAsync( () -> {
+			PhaseProfiler.Phase phase = PhaseProfiler.getInstance().start("level of detail");
+			try {
+				return vertexBuffer.simplify(tileSize);
 			}
-
-			selectedPolygons = new ArrayList<LanguagePolygon>( langPolygons.size() );
-			criteriaFamilies = new ArrayList<LanguageFamily>();
-			criteriaFeatures = new ArrayList<Feature>();
-			criteriaLocations = new ArrayList<Location>();
+			finally {
+				phase.close();
+			}
+		}, executor).thenAcceptAsync( lod -> {
+			vertexBuffer.setLevelsOfDetail(lod);
+			repaint();
+		}, SwingUtilities::invokeLater );
+	}
+	
+	/**
+	 * parse the language data, passing each Location on as it's parsed and reporting any failure to the
+	 * text console; safe to call from any thread
+	 * 
+	 * @param phonemes the phoneme database, which may still be parsing
+	 * @param listener called on this thread with each parsed Location; may be null
+	 * @return the parsed data, or null if it couldn't be parsed
+	 */
+	public static MapData parseData(CompletableFuture<PhonemeDatabase> phonemes, ILocationListener listener) {
+		try {
+			return new MapData(phonemes, listener).getParsedData();
 		}
 		catch (ParserConfigurationException pce) {
-			isParseFailed = true;
-			
 			TextConsole.writeLine("A configuration error is detected in the XML parser.");
 			pce.printStackTrace();
 		}
 		catch (InvalidXMLException ixe) {
-			isParseFailed = true;
-			
 			TextConsole.writeLine("An error occurred while parsing the XML data.");
 			ixe.printStackTrace();
 		}
 		catch (IOException ie) {
-			isParseFailed = true;
-			
 			TextConsole.writeLine("An error occurred while reading the XML data.");
 			ie.printStackTrace();
 		}
-		finally {
-			setDisplayPositionByLatLon(DEFAULT_LATITUDE, DEFAULT_LONGITUDE, DEFAULT_ZOOM);
-			repaint();
-		}
+		return null;
 	}
 
 	/**
@@ -299,91 +421,232 @@ public class Map extends JMapViewer implements IObservable {
 				selectedPolygons.add(lp);
 			}
 		}
+		selectionHash = hashPolygons( getVisiblePolygons() );
 		repaint();
 	}
 	
 	/**
-	 * paint LanguagePolygons using Graphics2D
+	 * @return a 64-bit hash of the input LanguagePolygons, in order; LanguagePolygons live as long
+	 * as the Map, so their identity is enough to tell selections apart
+	 */
+	private static long hashPolygons(List<LanguagePolygon> lps) {
+		long hash = 1;
+		for (LanguagePolygon lp : lps) {
+			hash = 1000003 * hash + System.identityHashCode(lp);
+		}
+		return hash;
+	}
+	
+	/**
+	 * project every LanguagePolygon at the current zoom level and capture the visible ones,
+	 * unhighlighted, for the OverlayCache to render tiles from
 	 * 
-	 * @param g the Graphics object for this
-	 * @param lpCollection the collection of LanguagePolygons to paint
+	 * @return a snapshot of the overlay as it should look now
 	 */
-	private void paintLanguagePolygons(Graphics g, Collection<LanguagePolygon> lpCollection) {
-		Graphics2D g2d = (Graphics2D) g;
-		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+	OverlaySnapshot createOverlaySnapshot() {
+		projectVertexBuffer();
 		notifyObservers();
-		LanguagePolygon renderLast = null;
-		for (LanguagePolygon lp : lpCollection) {
-			if (lp == mouseoveredLP) {
-				//if the lp is highlighted, skip for now and render after the loop so it's on top
-				lp.setIsHighlighted(true);
-				renderLast = lp;
-				continue;
-			}
-			else {
-				lp.setIsHighlighted(false);
-			}
-			paintLanguagePolygon(lp, g2d);
+		return new OverlaySnapshot( this, getVisiblePolygons() );
+	}
+	
+	/**
+	 * project the VertexBuffer at the current zoom level, with outlines as coarse as the
+	 * RenderQualityPolicy currently allows; does nothing if it's already projected that way
+	 */
+	void projectVertexBuffer() {
+		vertexBuffer.project( zoom, getTileSize(), zoom - qualityPolicy.getDetailBias() );
+	}
+	
+	/**
+	 * paint the moused-over LanguagePolygon, in its highlighted colours, on top of the cached overlay
+	 */
+	private void paintHighlight(Graphics2D g2d) {
+		if (mouseoveredLP == null || mouseoveredLP.getProjectedRings() == null) {
+			return;
 		}
-		
-		if (renderLast != null) {
-			paintLanguagePolygon(renderLast, g2d);
+		RenderQualityPolicy.applyHints( g2d, qualityPolicy.getLevel() );
+		Rectangle clip = g2d.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
 		}
+		FillStyle style = mouseoveredLP.getStyle( viewMode, true, !simpleRender && qualityPolicy.isTextured() );
+		overlayRenderer.paint(g2d, mouseoveredLP.getProjectedRings(), style, getMapWidth(),
+				getOriginX(), getOriginY(), clip.x, clip.y, clip.width, clip.height);
 	}
 	
 	/**
-	 * paint a single LanguagePolygon collection, which cannot be null
+	 * one frame of work, run by the FrameScheduler at most once per display refresh: apply the wheel
+	 * rotation and pointer movement recorded since the last frame, then hand the accumulated dirty
+	 * region to Swing to paint
 	 */
-	private void paintLanguagePolygon(LanguagePolygon lp, Graphics2D g2d) {
-		g2d.setColor(lp.getColor());
-		List<Polygon> polys = lp.getPolygons();
-		//invalidate copies and recalculate
-		lp.getPolygonCopiesOnScreen().clear();;
+	private void runFrame() {
+		if (wheelRotation != 0) {
+			//JMapViewer ignores a zoom level out of range rather than clamping it
+			final int newZoom = Math.max(MIN_ZOOM,
+					Math.min(tileController.getTileSource().getMaxZoom(), getZoom() - wheelRotation));
+			setZoom(newZoom, wheelPoint);
+			wheelRotation = 0;
+		}
+		//keep the centre within one copy of the world; moving by whole mapWidths looks the same
+		final int mapWidth = getMapWidth();
+		if (center.x < 0 || center.x >= mapWidth) {
+			moveMap(Math.floorMod(center.x, mapWidth) - center.x, 0);
+		}
+		updateMouseoveredLP();
+		tilePrefetcher.update();
 		
-		if (polys == null) {
+		if (dirtyRight > dirtyLeft && dirtyBottom > dirtyTop) {
+			super.repaint(0, dirtyLeft, dirtyTop, dirtyRight - dirtyLeft, dirtyBottom - dirtyTop);
+		}
+		dirtyLeft = dirtyTop = Integer.MAX_VALUE;
+		dirtyRight = dirtyBottom = Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * if the mouse moved since the last check, work out which polygon it's over now
+	 */
+	private void updateMouseoveredLP() {
+		if (!isPointerMoved) {
 			return;
 		}
-		int mapWidth = tileController.getTileSource().getTileSize() << zoom;
-		for (Polygon poly : polys) {
-			if (poly != null) {
-				if (simpleRender) {
-					g2d.fill(poly);
-				}
-				else {
-					Rectangle2D polyRect = poly.getBounds2D();
-					Rectangle2D rect = new Rectangle2D.Float( (int) polyRect.getMinX(), (int) polyRect.getMinY(),
-							TexturePattern.WIDTH, TexturePattern.HEIGHT);
-					g2d.setPaint(new TexturePaint(lp.getTexture().getImage(), rect));
-					g2d.fill(poly);
-				}
-				//try to draw copies where they should be on seamless map
-				Polygon copy = LanguagePolygon.copy(poly);
-				copy.translate(-mapWidth, 0);
-				int xAmountFromOriginal = -mapWidth;
-				//draw copies to the west where they should be visible
-				while (copy.getBounds().x + copy.getBounds().width > 0) {
-					g2d.fill(copy);
-					lp.getPolygonCopiesOnScreen().add(copy);
-					copy = LanguagePolygon.copy(copy);
-					copy.translate(-mapWidth, 0);
-					xAmountFromOriginal -= mapWidth;
-				}
-				//set copy polygon back to original x + one mapWidth east
-				copy.translate(-xAmountFromOriginal + mapWidth, 0);
-				//draw copies to the east where they should be visible
-				while (copy.getBounds().x < getWidth()) {
-					g2d.fill(copy);
-					lp.getPolygonCopiesOnScreen().add(copy);
-					copy = LanguagePolygon.copy(copy);
-					copy.translate(mapWidth, 0);
-				}
+		isPointerMoved = false;
+		if (isParseFailed || pointer == null) {
+			setMouseoveredLP(null);
+			return;
+		}
+		if (mouseoveredLP != null && mouseoveredLP.contains(pointer) ) {
+			return;
+		}
+		
+		//only polygons visible in the current selection can be moused over
+		for (LanguagePolygon lp : getVisiblePolygons()) {
+			if (lp.contains(pointer) ) {
+				setMouseoveredLP(lp);
+				return;
 			}
 		}
+		setMouseoveredLP(null);
+	}
+	
+	/**
+	 * repaints requested on the event thread, by this class or by JMapViewer, are merged into one
+	 * dirty region and painted on the next frame; those from other threads go straight to Swing
+	 */
+	@Override
+	public void repaint(long tm, int x, int y, int width, int height) {
+		if (frameScheduler == null || !SwingUtilities.isEventDispatchThread()) {
+			super.repaint(tm, x, y, width, height);
+			return;
+		}
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		dirtyLeft = Math.min(dirtyLeft, x);
+		dirtyTop = Math.min(dirtyTop, y);
+		dirtyRight = Math.max(dirtyRight, x + width);
+		dirtyBottom = Math.max(dirtyBottom, y + height);
+		frameScheduler.requestFrame();
+	}
+	
+	/**
+	 * change which LanguagePolygon is moused over, repainting only where the old and new highlights are
+	 * 
+	 * @param lp the newly moused-over LanguagePolygon, or null for none
+	 */
+	private void setMouseoveredLP(LanguagePolygon lp) {
+		if (lp == mouseoveredLP) {
+			return;
+		}
+		LanguagePolygon previous = mouseoveredLP;
+		if (previous != null) {
+			previous.setIsHighlighted(false);
+		}
+		if (lp != null) {
+			lp.setIsHighlighted(true);
+		}
+		mouseoveredLP = lp;
+		setToolTipText( lp == null ? null : lp.getEncapsulatedLanguage().getCommonName() );
+		repaintLanguagePolygon(previous);
+		repaintLanguagePolygon(lp);
+	}
+	
+	/**
+	 * repaint the part of the component covered by a LanguagePolygon and each of its copies on the
+	 * seamless map; the RepaintManager merges these into one region with whatever else is pending
+	 * 
+	 * @param lp the LanguagePolygon to repaint, may be null
+	 */
+	private void repaintLanguagePolygon(LanguagePolygon lp) {
+		ProjectedRings rings = lp == null ? null : lp.getProjectedRings();
+		if (rings == null) {
+			return;
+		}
+		int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+		int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < rings.getRingCount(); ++i) {
+			minX = Math.min(minX, rings.getMinX(i));
+			maxX = Math.max(maxX, rings.getMaxX(i));
+			minY = Math.min(minY, rings.getMinY(i));
+			maxY = Math.max(maxY, rings.getMaxY(i));
+		}
+		
+		//antialiasing may touch the pixel just outside the bounds
+		final int originX = getOriginX();
+		final int top = (int) Math.max(0, (long) minY + getOriginY() - 1);
+		final int bottom = (int) Math.min(getHeight(), (long) maxY + getOriginY() + 2);
+		if (top >= bottom) {
+			return;
+		}
+		final int mapWidth = getMapWidth();
+		final int firstCopy = Math.floorDiv(-originX - maxX, mapWidth) + 1;
+		final int lastCopy = Math.floorDiv(getWidth() - 1 - originX - minX, mapWidth);
+		for (int copy = firstCopy; copy <= lastCopy; ++copy) {
+			final long offset = originX + (long) copy * mapWidth;
+			final int left = (int) Math.max(0, minX + offset - 1);
+			final int right = (int) Math.min(getWidth(), maxX + offset + 2);
+			repaint(left, top, right - left, bottom - top);
+		}
 	}
 	
 	@Override
 	public void paintComponent(Graphics g) {
+		final long start = System.nanoTime();
+		paintMap(g);
+		if (frameScheduler != null) {
+			final long elapsed = System.nanoTime() - start;
+			frameScheduler.recordPaint(elapsed);
+			qualityPolicy.recordPaint( elapsed / 1e6, overlayCache.getPendingCount(), frameScheduler.getFrameInterval() );
+		}
+	}
+	
+	/**
+	 * moving the map lowers the render quality until it's still again
+	 */
+	@Override
+	public void moveMap(int x, int y) {
+		if (qualityPolicy != null && (x != 0 || y != 0) ) {
+			qualityPolicy.noteInteraction();
+		}
+		super.moveMap(x, y);
+	}
+	
+	/**
+	 * zooming lowers the render quality until the map is still again
+	 */
+	@Override
+	public void setZoom(int zoom, Point mapPoint) {
+		if (qualityPolicy != null && zoom != this.zoom) {
+			qualityPolicy.noteInteraction();
+		}
+		super.setZoom(zoom, mapPoint);
+	}
+	
+	/**
+	 * paint the map tiles, then the cached overlay, then the highlight
+	 */
+	private void paintMap(Graphics g) {
+		//reorder and prune waiting tile requests before the tiles of this view are asked for
+		tileScheduler.update();
 		super.paintComponent(g);
 		
 		drawMapSeamlessly(g);
@@ -393,107 +656,91 @@ public class Map extends JMapViewer implements IObservable {
 			return;
 		}
 		
-		if (criteriaLocations.isEmpty() &&
-			criteriaFamilies.isEmpty() &&
-			criteriaFeatures.isEmpty() ) {
-			paintLanguagePolygons(g, langPolygons);
-		}
-		else {
-			paintLanguagePolygons(g, selectedPolygons);
-		}
+		Graphics2D g2d = (Graphics2D) g;
+		overlayCache.paint(g2d);
+		paintHighlight(g2d);
 	}
 
 	/**
-	 * repeat the map as necessary so that it wraps around seamlessly
+	 * repeat the map as necessary so that it wraps around seamlessly, and cover tiles that aren't loaded yet
+	 * 
+	 * the visible tiles are found by integer arithmetic on the world origin: column tileX on screen
+	 * shows map tile tileX modulo the number of tiles across the world; JMapViewer has already drawn
+	 * the columns of the primary copy, so only the wrapped columns to its west and east are drawn here,
+	 * but any tile of either that isn't loaded is covered by what's in memory of the zoom levels around it
 	 * 
 	 * @param g graphics device
 	 */
 	private void drawMapSeamlessly(Graphics g) {
-		//draw extra tiles to make map seamless
-		//determine a bounding box of where the map is in relation to the component viewport
-		//the map rectangle starts at (topLeftX, topLeftY) and has a width/height of mapWidth
-		//the viewport rectangle starts at 0, 0 and has a width/height of getWidth(), getHeight()
-		final int tileWidth = tileController.getTileSource().getTileSize();
-		final int topLeftX = getWidth() / 2 - center.x;
-		final int topLeftY = getHeight() / 2 - center.y;
-		final int mapWidth = tileWidth << zoom;
+		final int tileSize = getTileSize();
+		final int tilesAcross = 1 << zoom;
+		final int originX = getOriginX();
+		final int originY = getOriginY();
+		final int firstX = Math.floorDiv(-originX, tileSize);
+		final int lastX = Math.floorDiv(getWidth() - 1 - originX, tileSize);
+		final int firstY = Math.max(0, Math.floorDiv(-originY, tileSize));
+		final int lastY = Math.min(tilesAcross - 1, Math.floorDiv(getHeight() - 1 - originY, tileSize));
+		final TileSource source = tileController.getTileSource();
 		
-		//west edge plus x offset is within or to the east of the viewport
-		//loop and draw tiles until the viewport is covered
-		int x, y, bottomY;
-		for (x = topLeftX, y = topLeftY, bottomY = topLeftY + mapWidth; x > 0; x -= tileWidth) {
-			while (true) {
-				//y component not in viewport, skip
-				if (y > getHeight() || bottomY < 0) {
-					break;
+		for (int tileY = firstY; tileY <= lastY; ++tileY) {
+			for (int tileX = firstX; tileX <= lastX; ++tileX) {
+				final int x = Math.floorMod(tileX, tilesAcross);
+				final int screenX = originX + tileX * tileSize;
+				final int screenY = originY + tileY * tileSize;
+				Tile tile;
+				if (tileX >= 0 && tileX < tilesAcross) {
+					//already requested, counted and drawn by JMapViewer
+					tile = tileCache.peek(source, x, tileY, zoom);
 				}
-				//y gone over map width, finish
-				if (y >= topLeftY + mapWidth) {
-					break;
-				}
-				//reduce y until range includes only visible tiles
-				final boolean isYTileOutOfView = y + tileWidth < 0;
-				final boolean isBottomYOutOfView = bottomY > getHeight();
-				if (isYTileOutOfView || isBottomYOutOfView) {
-					if (isYTileOutOfView) {
-						y += tileWidth;
-					}
-					if (isBottomYOutOfView) {
-						bottomY -= tileWidth;
+				else {
+					tile = tileController.getTile(x, tileY, zoom);
+					if (tile != null) {
+						tile.paint(g, screenX, screenY);
 					}
-					continue;
 				}
-				//draw west
-				Coordinate topLeft = getAdjustedPosition(x - tileWidth + 1, y + 1);
-				Tile tile = tileController.getTile(longitudeToTileX(topLeft.getLon(), zoom),
-							latitudeToTileY(topLeft.getLat(), zoom), zoom);
-				if (tile != null) {
-					tile.paint(g, x - tileWidth + 1, y);
+				if (!isPaintable(tile)) {
+					paintFallback(g, source, x, tileY, screenX, screenY, tileSize);
 				}
-				y += tileWidth;
 			}
-			//reset y; bottomY stays the same
-			y = topLeftY;
+		}
+	}
+	
+	/**
+	 * cover a tile that isn't loaded with a scaled-up part of the nearest loaded ancestor within
+	 * MAX_FALLBACK_LEVELS zoom levels, then with whichever of its four children are loaded, scaled down;
+	 * they're only peeked at, so standing in doesn't keep them cached or count as demand for them
+	 */
+	private void paintFallback(Graphics g, TileSource source, int x, int y, int screenX, int screenY, int tileSize) {
+		for (int levels = 1; levels <= MAX_FALLBACK_LEVELS && levels <= zoom; ++levels) {
+			Tile parent = tileCache.peek(source, x >> levels, y >> levels, zoom - levels);
+			if (isPaintable(parent)) {
+				final int size = tileSize >> levels;
+				final int left = (x & ( (1 << levels) - 1 )) * size;
+				final int top = (y & ( (1 << levels) - 1 )) * size;
+				g.drawImage(parent.getImage(), screenX, screenY, screenX + tileSize, screenY + tileSize,
+						left, top, left + size, top + size, null);
+				break;
+			}
 		}
 		
-		final int topRightX = topLeftX + mapWidth;
-		//east edge is within viewport or to its west
-		for (x = topRightX, y = topLeftY, bottomY = topLeftY + mapWidth; x < getWidth(); x += tileWidth) {
-			while (true) {
-				//y component not in viewport, skip
-				if (y > getHeight() || bottomY < 0) {
-					break;
+		if (zoom < source.getMaxZoom()) {
+			final int half = tileSize / 2;
+			for (int i = 0; i < 4; ++i) {
+				Tile child = tileCache.peek(source, 2 * x + (i & 1), 2 * y + (i >> 1), zoom + 1);
+				if (isPaintable(child)) {
+					g.drawImage(child.getImage(), screenX + (i & 1) * half, screenY + (i >> 1) * half, half, half, null);
 				}
-				//y gone over map width, finish
-				if (y >= topLeftY + mapWidth) {
-					break;
-				}
-				//reduce y until range includes only visible tiles
-				final boolean isYTileOutOfView = y + tileWidth < 0;
-				final boolean isBottomYOutOfView = bottomY > getHeight();
-				if (isYTileOutOfView || isBottomYOutOfView) {
-					if (isYTileOutOfView) {
-						y += tileWidth;
-					}
-					if (isBottomYOutOfView) {
-						bottomY -= tileWidth;
-					}
-					continue;
-				}
-				//draw east
-				Coordinate topRight = getAdjustedPosition(x + 1, y + 1);
-				Tile tile = tileController.getTile(longitudeToTileX(topRight.getLon(), zoom),
-							latitudeToTileY(topRight.getLat(), zoom), zoom);
-				if (tile != null) {
-					tile.paint(g, x, y);
-				}
-				y += tileWidth;
 			}
-			//reset y; bottomY stays the same
-			y = topLeftY;
 		}
 	}
 	
+	/**
+	 * @return true if the tile has its real image
+	 */
+	private static boolean isPaintable(Tile tile) {
+		return tile != null && tile.isLoaded() && !tile.hasError() && tile.getImage() != null;
+	}
+
 	/**
 	 * move the tooltip dynamically
 	 */
@@ -502,7 +749,7 @@ public class Map extends JMapViewer implements IObservable {
 		if (getToolTipText(event) == null) {
 			return null;
 		}
-		
+
 		Point point = event.getPoint();
 		if (point.y < 40) {
 			point.y += 20;
@@ -510,37 +757,10 @@ public class Map extends JMapViewer implements IObservable {
 		else {
 			point.y -= 20;
 		}
-		
+
 		return point;
 	}
-	
-	/**
-	 * @param lng longitude
-	 * @param zoom zoom level
-	 * @return tilex for slippy map tile
-	 */
-	private int longitudeToTileX(double lng, int zoom) {
-		return (int) Math.floor((lng + 180.0) / 360.0 * (1 << zoom));
-	}
-	
-	/**
-	 * @param lat latitude
-	 * @param zoom zoom level
-	 * @return tiley for slippy map tile
-	 */
-	private int latitudeToTileY(double lat, int zoom) {
-		int val = (int) Math.floor((1 - Math.log(Math.tan(Math.toRadians(lat))
-						+ 1 / Math.cos(Math.toRadians(lat))) / Math.PI) / 2 * (1 << zoom));
-		if (val < 0) {
-			val = 0;
-		}
-		else if (val >= (1 << zoom)) {
-			val = (1 << zoom) - 1;
-		}
-		
-		return val;
-	}
-	
+
 	/**
 	 * translate a point to a latlong coordinate, wrapped between max and min values
 	 * @param point a point on screen
@@ -599,7 +819,43 @@ public class Map extends JMapViewer implements IObservable {
 	}
 	
 	//accessors
+	/**
+	 * @return the language data, or null until it's finished parsing or if it couldn't be parsed
+	 */
 	public MapData getData() { return data; }
+	public LocationBatcher getLocationBatcher() { return locationBatcher; }
+	public VertexBuffer getVertexBuffer() { return vertexBuffer; }
+	public TextureCache getTextureCache() { return textureCache; }
+	public int getTileSize() { return tileController.getTileSource().getTileSize(); }
+	/**
+	 * @return width in pixels of one copy of the world at the current zoom level
+	 */
+	public int getMapWidth() { return getTileSize() << zoom; }
+	/**
+	 * @return x coordinate on screen of the world origin, i.e. the top-left corner of the map
+	 */
+	public int getOriginX() { return getWidth() / 2 - center.x; }
+	/**
+	 * @return y coordinate on screen of the world origin, i.e. the top-left corner of the map
+	 */
+	public int getOriginY() { return getHeight() / 2 - center.y; }
+	public long getSelectionHash() { return selectionHash; }
+	public FrameScheduler getFrameScheduler() { return frameScheduler; }
+	public RenderQualityPolicy getQualityPolicy() { return qualityPolicy; }
+	public TilePrefetcher getTilePrefetcher() { return tilePrefetcher; }
+	public TileLoadScheduler getTileScheduler() { return tileScheduler; }
+	@Override
+	public BoundedTileCache getTileCache() { return tileCache; }
+	TileController getTileController() { return tileController; }
+	/**
+	 * @return the LanguagePolygons currently drawn: all of them if nothing is selected, otherwise the selected ones
+	 */
+	public List<LanguagePolygon> getVisiblePolygons() {
+		if (criteriaLocations.isEmpty() && criteriaFamilies.isEmpty() && criteriaFeatures.isEmpty()) {
+			return langPolygons;
+		}
+		return selectedPolygons;
+	}
 	public ViewMode getViewMode() { return viewMode; }
 	public Map setViewMode(ViewMode vm) { viewMode = vm; return this; }
 	/**
@@ -607,13 +863,17 @@ public class Map extends JMapViewer implements IObservable {
 	 */
 	public boolean getSimpleRender() { return simpleRender; }
 	/**
-	 * sets simpleRender and calls for the component to repaint itself
+	 * sets simpleRender and calls for the component to repaint itself; switching textures on
+	 * generates every texture not generated yet
 	 * 
 	 * @param b if true, use simple colours; if false, use textures
 	 */
 	public Map setSimpleRender(boolean b) {
 		if (simpleRender != b) {
 			simpleRender = b;
+			if (!simpleRender) {
+				textureCache.generateAll(langPolygons);
+			}
 			repaint();
 		}
 		return this;
@@ -649,6 +909,28 @@ public class Map extends JMapViewer implements IObservable {
 			setMovementMouseButton(MouseEvent.BUTTON1);
 		}
 		
+		/**
+		 * pressing the movement button may start a drag
+		 */
+		@Override
+		public void mousePressed(MouseEvent e) {
+			super.mousePressed(e);
+			if (e.getButton() == MouseEvent.BUTTON1) {
+				tilePrefetcher.noteDragStart( e.getPoint() );
+			}
+		}
+		
+		/**
+		 * dragging with the movement button moves the map; how fast tells the prefetcher where it's going
+		 */
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			if ( (e.getModifiersEx() & MouseEvent.BUTTON1_DOWN_MASK) != 0) {
+				tilePrefetcher.noteDrag( e.getPoint() );
+			}
+			super.mouseDragged(e);
+		}
+		
 		/**
 		 * releasing mouse prints latitude/longitude at mouse pointer to text console
 		 */
@@ -682,6 +964,8 @@ public class Map extends JMapViewer implements IObservable {
 				map.zoomIn(e.getPoint());
 			}
 			else if (e.getClickCount() == 1) {
+				//the click may come before the frame that would have caught up with the mouse
+				updateMouseoveredLP();
 				if (mouseoveredLP != null) {
 					if (isParseFailed) {
 						return;
@@ -700,47 +984,28 @@ public class Map extends JMapViewer implements IObservable {
 		}
 		
 		/**
-		 * detects which polygon the mouse is currently over and update the state accordingly
-		 * also quietly recentres component if it goes too far left or right
+		 * records where the mouse is; which polygon it's over is worked out on the next frame
 		 */
 		@Override
 		public void mouseMoved(MouseEvent e) {
 			super.mouseMoved(e);
-			final int mapWidth = tileController.getTileSource().getTileSize() << zoom;
-			while (center.x < 0) {
-				moveMap(mapWidth, 0);
-			}
-			while (center.x > getWidth()) {
-				moveMap(-mapWidth, 0);
-			}
-			
-			if (isParseFailed) {
-				return;
-			}
-			
-			Point p = e.getPoint();
-			if (mouseoveredLP != null && mouseoveredLP.contains(p) ) {
+			pointer = e.getPoint();
+			isPointerMoved = true;
+			frameScheduler.requestFrame();
+		}
+		
+		/**
+		 * adds up wheel rotation; the map zooms by all of it at once on the next frame
+		 */
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e) {
+			if (!isWheelZoomEnabled()) {
 				return;
 			}
-
-			for (LanguagePolygon lp : langPolygons) {
-				if (lp.contains(p) ) {
-					//only update state if moused-over language polygon is actually visible in the current view mode
-					if ( ( criteriaLocations.isEmpty() && criteriaFamilies.isEmpty() && criteriaFeatures.isEmpty() )
-						|| selectedPolygons.contains(lp) ) {
-						mouseoveredLP = lp;
-						setToolTipText( lp.getEncapsulatedLanguage().getCommonName() );
-						repaint();
-						return;
-					}
-					else {
-						continue;
-					}
-				}
-			}
-			mouseoveredLP = null;
-			setToolTipText(null);
-			repaint();
+			wheelRotation += e.getWheelRotation();
+			wheelPoint = e.getPoint();
+			tilePrefetcher.noteWheel( e.getWheelRotation(), e.getPoint() );
+			frameScheduler.requestFrame();
 		}
 		
 		/**
@@ -758,9 +1023,9 @@ public class Map extends JMapViewer implements IObservable {
 		@Override
 		public void mouseExited(MouseEvent e) {
 			super.mouseExited(e);
-			mouseoveredLP = null;
-			setToolTipText(null);
-			repaint();
+			pointer = null;
+			isPointerMoved = true;
+			frameScheduler.requestFrame();
 		}
 	}
 }
@@ -0,0 +1,368 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * a raster cache of the language polygon overlay, cut into tiles that line up with the map tiles
+ *
+ * each tile is keyed by zoom level, tile position, view mode, render mode and a hash of which
+ * polygons are visible, and holds the overlay exactly as it looks over that map tile; panning back
+ * to an area, or switching back to an earlier selection, reuses tiles instead of refilling polygons;
+ * the x coordinate of a key is taken modulo the number of tiles across the world, so every wrapped
+ * copy of the world shares the same tiles; the least recently drawn tiles are evicted first
+ *
+ * missing tiles are rendered by a pool of worker threads from an OverlaySnapshot, so painting never
+ * waits on them; until a tile is ready, whatever a cached tile from a nearby zoom level has of it is
+ * drawn instead, and the tile is repainted once it arrives
+ *
+ * tiles rendered while the map is moving are drawn at whatever lower quality the RenderQualityPolicy
+ * allows, and are rendered again once the map is still; tiles already cached at full quality are
+ * simply reused while it moves
+ *
+ * all methods, and the callbacks of finished tiles, run on the event thread
+ *
+ * @author RK
+ *
+ */
+public class OverlayCache {
+
+	/**
+	 * upper bound on the pixels held by all cached tiles, 64 MB at four bytes per pixel
+	 */
+	private static final int MAX_CACHED_PIXELS = 1 << 24;
+	/**
+	 * how many zoom levels out to look for a tile to stand in for one still being rendered
+	 */
+	private static final int MAX_FALLBACK_LEVELS = 3;
+
+	private Map map;
+	private LinkedHashMap<TileKey, Tile> tiles;
+	private HashMap<TileKey, Future<?>> pending;
+	private ExecutorService workers;
+	private ThreadLocal<OverlayRenderer> renderers;
+	private OverlaySnapshot snapshot;
+	private int maxTiles = 0;
+	private int tileSize = 0;
+	private int workerCount;
+
+	/**
+	 * constructs an empty OverlayCache for the input Map, with one worker thread per core
+	 * beyond the one the event thread needs
+	 *
+	 * @param m the Map whose overlay is cached
+	 */
+	public OverlayCache(Map m) {
+		map = m;
+		//access order, so iteration runs from least to most recently used
+		tiles = new LinkedHashMap<TileKey, Tile>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1;
+
+			@Override
+			protected boolean removeEldestEntry(java.util.Map.Entry<TileKey, Tile> eldest) {
+				return size() > maxTiles;
+			}
+		};
+		pending = new HashMap<TileKey, Future<?>>();
+		renderers = ThreadLocal.withInitial(OverlayRenderer::new);
+
+		workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		final AtomicInteger threadCount = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+			Thread thread = new Thread(runnable, "overlay-renderer-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		});
+	}
+
+	/**
+	 * draw the overlay tiles covering the map component, queueing the ones not in the cache
+	 *
+	 * @param g graphics of the map component
+	 */
+	public void paint(Graphics2D g) {
+		final int size = map.getTileSize();
+		if (size != tileSize) {
+			clear();
+			tileSize = size;
+			maxTiles = Math.max(1, MAX_CACHED_PIXELS / (size * size));
+		}
+		if (snapshot == null || !snapshot.isCurrent(map)) {
+			snapshot = map.createOverlaySnapshot();
+		}
+
+		final int zoom = snapshot.getZoom();
+		final int tilesAcross = 1 << zoom;
+		final int originX = map.getOriginX();
+		final int originY = map.getOriginY();
+		final int firstX = Math.floorDiv(-originX, size);
+		final int lastX = Math.floorDiv(map.getWidth() - 1 - originX, size);
+		final int firstY = Math.max(0, Math.floorDiv(-originY, size));
+		final int lastY = Math.min(tilesAcross - 1, Math.floorDiv(map.getHeight() - 1 - originY, size));
+
+		//a partial repaint only draws the tiles it touches, but still keeps every tile on screen queued
+		Rectangle clip = g.getClipBounds();
+		GraphicsConfiguration gc = map.getGraphicsConfiguration();
+		HashSet<TileKey> wanted = new HashSet<TileKey>();
+		for (int tileY = firstY; tileY <= lastY; ++tileY) {
+			for (int tileX = firstX; tileX <= lastX; ++tileX) {
+				TileKey key = new TileKey(zoom, Math.floorMod(tileX, tilesAcross), tileY, snapshot.getViewMode(),
+											snapshot.getSimpleRender(), snapshot.getSelectionHash());
+				final int x = originX + tileX * size;
+				final int y = originY + tileY * size;
+				final boolean isClipped = clip != null && !clip.intersects(x, y, size, size);
+				Tile tile = tiles.get(key);
+				if (tile != null) {
+					if (!isClipped) {
+						g.drawImage(tile.image, x, y, null);
+					}
+					//a tile drawn coarsely while the map was moving is redrawn once it's still
+					if (tile.quality > snapshot.getQuality()) {
+						wanted.add(key);
+						request(key, gc);
+					}
+				}
+				else {
+					wanted.add(key);
+					request(key, gc);
+					if (!isClipped) {
+						paintFallback(g, key, x, y);
+					}
+				}
+			}
+		}
+
+		//tiles queued for an earlier view that have scrolled away are not worth rendering any more
+		Iterator<java.util.Map.Entry<TileKey, Future<?>>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			java.util.Map.Entry<TileKey, Future<?>> entry = it.next();
+			if (!wanted.contains(entry.getKey())) {
+				entry.getValue().cancel(false);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * drop every cached tile and cancel every queued one
+	 */
+	public void clear() {
+		for (Future<?> future : pending.values()) {
+			future.cancel(false);
+		}
+		pending.clear();
+		tiles.clear();
+	}
+
+	/**
+	 * queue a tile for rendering from the current snapshot, unless it's already queued
+	 */
+	private void request(TileKey key, GraphicsConfiguration gc) {
+		if (pending.containsKey(key)) {
+			return;
+		}
+		final OverlaySnapshot source = snapshot;
+		final int size = tileSize;
+		FutureTask<Tile> task = new FutureTask<Tile>(() -> render(source, key, size, gc)) {
+			@Override
+			protected void done() {
+				if (!isCancelled()) {
+					SwingUtilities.invokeLater( () -> finish(key, this, size) );
+				}
+			}
+		};
+		pending.put(key, task);
+		workers.execute(task);
+	}
+
+	/**
+	 * cache a tile a worker has finished and repaint it, unless a better one is already cached;
+	 * a tile whose task was queued again in the meantime is cached all the same, since it is as good
+	 * as the one still to come; how long it took goes to the RenderQualityPolicy, since that's where
+	 * the overlay is filled rather than blitted
+	 */
+	private void finish(TileKey key, FutureTask<Tile> task, int size) {
+		pending.remove(key, task);
+		if (size != tileSize) {
+			return;
+		}
+		try {
+			Tile tile = task.get();
+			map.getQualityPolicy().recordTileRender(tile.renderNanos / 1e6, tile.quality, workerCount);
+			Tile cached = tiles.get(key);
+			if (cached != null && cached.quality <= tile.quality) {
+				return;
+			}
+			tiles.put(key, tile);
+			repaintTile(key);
+		}
+		catch (InterruptedException | ExecutionException e) {
+			TextConsole.writeLine("An error occurred while drawing the language areas.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * render the overlay over one map tile; the world origin is placed so that the tile's
+	 * top-left corner lands on the image's; runs on a worker thread
+	 */
+	private Tile render(OverlaySnapshot source, TileKey key, int size, GraphicsConfiguration gc) {
+		BufferedImage image;
+		if (gc == null) {
+			image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		else {
+			image = gc.createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+		}
+		final long start = System.nanoTime();
+		Graphics2D g = image.createGraphics();
+		source.paint(g, renderers.get(), -key.x * size, -key.y * size, 0, 0, size, size);
+		g.dispose();
+
+		return new Tile( image, source.getQuality(), System.nanoTime() - start );
+	}
+
+	/**
+	 * stand in for a tile still being rendered with the matching part of a cached tile from a lower
+	 * zoom level, scaled up, or failing that with the cached tiles one zoom level in, scaled down
+	 */
+	private void paintFallback(Graphics2D g, TileKey key, int x, int y) {
+		for (int levels = 1; levels <= MAX_FALLBACK_LEVELS && levels <= key.zoom; ++levels) {
+			Tile parent = tiles.get(key.atZoom(key.zoom - levels, key.x >> levels, key.y >> levels));
+			if (parent != null) {
+				final int part = tileSize >> levels;
+				final int sourceX = (key.x & ((1 << levels) - 1)) * part;
+				final int sourceY = (key.y & ((1 << levels) - 1)) * part;
+				g.drawImage(parent.image, x, y, x + tileSize, y + tileSize,
+							sourceX, sourceY, sourceX + part, sourceY + part, null);
+				return;
+			}
+		}
+
+		final int half = tileSize / 2;
+		for (int i = 0; i < 4; ++i) {
+			Tile child = tiles.get(key.atZoom(key.zoom + 1, key.x * 2 + (i & 1), key.y * 2 + (i >> 1)));
+			if (child != null) {
+				final int childX = x + (i & 1) * half;
+				final int childY = y + (i >> 1) * half;
+				g.drawImage(child.image, childX, childY, childX + half, childY + half, 0, 0, tileSize, tileSize, null);
+			}
+		}
+	}
+
+	/**
+	 * repaint every copy of a tile on screen, if it belongs to the current zoom level
+	 */
+	private void repaintTile(TileKey key) {
+		if (key.zoom != map.getZoom()) {
+			return;
+		}
+		final int tilesAcross = 1 << key.zoom;
+		final int originX = map.getOriginX();
+		final int originY = map.getOriginY();
+		final int firstX = Math.floorDiv(-originX, tileSize);
+		final int lastX = Math.floorDiv(map.getWidth() - 1 - originX, tileSize);
+		for (int tileX = firstX; tileX <= lastX; ++tileX) {
+			if (Math.floorMod(tileX, tilesAcross) == key.x) {
+				map.repaint(originX + tileX * tileSize, originY + key.y * tileSize, tileSize, tileSize);
+			}
+		}
+	}
+
+	//accessors
+	public int getTileCount() { return tiles.size(); }
+	public int getPendingCount() { return pending.size(); }
+
+	/**
+	 * a rendered tile, the RenderQualityPolicy level it was drawn at and how long drawing it took
+	 */
+	private static final class Tile {
+		private final BufferedImage image;
+		private final int quality;
+		private final long renderNanos;
+
+		private Tile(BufferedImage image, int quality, long renderNanos) {
+			this.image = image;
+			this.quality = quality;
+			this.renderNanos = renderNanos;
+		}
+	}
+
+	/**
+	 * identifies one overlay tile and everything that affects how it looks
+	 */
+	private static final class TileKey {
+		private final int zoom;
+		private final int x;
+		private final int y;
+		private final ViewMode viewMode;
+		private final boolean simpleRender;
+		private final long selectionHash;
+
+		private TileKey(int zoom, int x, int y, ViewMode viewMode, boolean simpleRender, long selectionHash) {
+			this.zoom = zoom;
+			this.x = x;
+			this.y = y;
+			this.viewMode = viewMode;
+			this.simpleRender = simpleRender;
+			this.selectionHash = selectionHash;
+		}
+
+		/**
+		 * @return the key of another tile drawn the same way
+		 */
+		private TileKey atZoom(int zoom, int x, int y) {
+			return new TileKey(zoom, x, y, viewMode, simpleRender, selectionHash);
+		}
+
+		/**
+		 * generated by Eclipse
+		 */
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + zoom;
+			result = prime * result + x;
+			result = prime * result + y;
+			result = prime * result + ((viewMode == null) ? 0 : viewMode.hashCode());
+			result = prime * result + (simpleRender ? 1231 : 1237);
+			result = prime * result + (int) (selectionHash ^ (selectionHash >>> 32));
+			return result;
+		}
+
+		/**
+		 * generated by Eclipse
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return zoom == other.zoom && x == other.x && y == other.y
+					&& viewMode == other.viewMode
+					&& simpleRender == other.simpleRender
+					&& selectionHash == other.selectionHash;
+		}
+	}
+}
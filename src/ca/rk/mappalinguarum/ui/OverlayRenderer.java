@@ -0,0 +1,106 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+
+import ca.rk.mappalinguarum.util.geometry.ProjectedRings;
+import ca.rk.mappalinguarum.util.geometry.RingClipper;
+import ca.rk.mappalinguarum.util.textures.AnchoredTexture;
+
+/**
+ * fills projected language polygons, and every copy of them on the seamless map, within a region
+ *
+ * an OverlayRenderer keeps clipping buffers between calls, so each thread that renders needs its own
+ *
+ * @author RK
+ *
+ */
+public class OverlayRenderer {
+
+	/**
+	 * how far, in pixels, clipped rings may extend past the edges of a region, so that
+	 * antialiasing along the edges is unaffected by clipping
+	 */
+	public static final int CLIP_MARGIN = 8;
+
+	private RingClipper ringClipper;
+
+	/**
+	 * constructs an OverlayRenderer
+	 */
+	public OverlayRenderer() {
+		ringClipper = new RingClipper();
+	}
+
+	/**
+	 * fill the rings of one language polygon that fall within a region;
+	 * rings are held in world-pixel coordinates, so each copy of each ring on the seamless map
+	 * is drawn at an offset of the world origin plus a whole number of mapWidths
+	 *
+	 * @param g2d graphics to paint on
+	 * @param rings the projected rings to fill
+	 * @param style the flat colour or texture to fill with
+	 * @param mapWidth width in pixels of one copy of the world
+	 * @param originX x coordinate, in g2d's space, of the world origin
+	 * @param originY y coordinate, in g2d's space, of the world origin
+	 * @param x left edge of the region
+	 * @param y top edge of the region
+	 * @param width width of the region
+	 * @param height height of the region
+	 */
+	public void paint(Graphics2D g2d, ProjectedRings rings, FillStyle style, int mapWidth,
+						int originX, int originY, int x, int y, int width, int height) {
+		final AnchoredTexture texture = style.getTexture();
+		g2d.setColor( style.getColour() );
+		for (int i = 0; i < rings.getRingCount(); ++i) {
+			//skip rings entirely above or below the region
+			if (rings.getMaxY(i) + originY < y || rings.getMinY(i) + originY >= y + height) {
+				continue;
+			}
+			//range of copies, counted in mapWidths from the canonical one, that overlap the region
+			final int firstCopy = Math.floorDiv(x - originX - rings.getMaxX(i), mapWidth) + 1;
+			final int lastCopy = Math.floorDiv(x + width - 1 - originX - rings.getMinX(i), mapWidth);
+			for (int copy = firstCopy; copy <= lastCopy; ++copy) {
+				paintRing(g2d, rings, i, texture, originX + (long) copy * mapWidth, originY, x, y, width, height);
+			}
+		}
+	}
+
+	/**
+	 * fill one ring shifted by (offsetX, offsetY); a ring that fits within the region is filled as is
+	 * under a translation, while one that sticks out, as most do at deep zoom, is first clipped to the
+	 * region so Java2D never rasterizes or overflows on the off-screen part
+	 */
+	private void paintRing(Graphics2D g2d, ProjectedRings rings, int ring, AnchoredTexture texture,
+							long offsetX, long offsetY, int x, int y, int width, int height) {
+		final long left = rings.getMinX(ring) + offsetX;
+		final long top = rings.getMinY(ring) + offsetY;
+		final boolean isInside = left >= x - CLIP_MARGIN && top >= y - CLIP_MARGIN
+				&& rings.getMaxX(ring) + offsetX <= x + width + CLIP_MARGIN
+				&& rings.getMaxY(ring) + offsetY <= y + height + CLIP_MARGIN;
+		//on a fully contained ring the offsets are within a region's width of the ring, so they fit in an int
+		final int translateX = isInside ? (int) offsetX : 0;
+		final int translateY = isInside ? (int) offsetY : 0;
+
+		if (texture != null) {
+			//anchor the texture to the ring's corner, in the translated space it's filled in
+			g2d.setPaint(texture.getPaint(left - translateX, top - translateY));
+		}
+
+		Polygon poly;
+		if (isInside) {
+			poly = rings.getRing(ring);
+		}
+		else if (ringClipper.clip(rings.getRing(ring).xpoints, rings.getRing(ring).ypoints, rings.getRing(ring).npoints,
+				offsetX, offsetY, x - CLIP_MARGIN, y - CLIP_MARGIN, x + width + CLIP_MARGIN, y + height + CLIP_MARGIN) > 0) {
+			poly = ringClipper.getClipped();
+		}
+		else {
+			return;
+		}
+
+		g2d.translate(translateX, translateY);
+		g2d.fill(poly);
+		g2d.translate(-translateX, -translateY);
+	}
+}
@@ -0,0 +1,105 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.awt.Graphics2D;
+import java.util.List;
+
+import ca.rk.mappalinguarum.util.geometry.ProjectedRings;
+
+/**
+ * everything needed to render the language overlay, captured on the event thread so that tiles can be
+ * rendered on other threads while the user goes on changing the map
+ *
+ * @author RK
+ *
+ */
+public class OverlaySnapshot {
+
+	private final int zoom;
+	private final int mapWidth;
+	private final ViewMode viewMode;
+	private final boolean simpleRender;
+	private final long selectionHash;
+	private final int quality;
+	/**
+	 * the VertexBuffer projection the rings were copied from
+	 */
+	private final int projectionId;
+	private final ProjectedRings[] rings;
+	private final FillStyle[] styles;
+
+	/**
+	 * capture the visible LanguagePolygons of a map, which must already be projected at the map's zoom level
+	 * and level of detail, to be drawn at the map's current render quality; must be called on the event thread
+	 *
+	 * @param map the Map to capture
+	 * @param lps the visible LanguagePolygons, captured unhighlighted
+	 */
+	public OverlaySnapshot(Map map, List<LanguagePolygon> lps) {
+		zoom = map.getZoom();
+		mapWidth = map.getMapWidth();
+		viewMode = map.getViewMode();
+		simpleRender = map.getSimpleRender();
+		selectionHash = map.getSelectionHash();
+		RenderQualityPolicy policy = map.getQualityPolicy();
+		quality = policy.getLevel();
+		projectionId = map.getVertexBuffer().getProjectionId();
+		final boolean isTextured = !simpleRender && policy.isTextured();
+		rings = new ProjectedRings[lps.size()];
+		styles = new FillStyle[lps.size()];
+		for (int i = 0; i < lps.size(); ++i) {
+			LanguagePolygon lp = lps.get(i);
+			rings[i] = lp.getProjectedRings();
+			if (rings[i] != null) {
+				styles[i] = lp.getStyle(viewMode, false, isTextured);
+			}
+		}
+	}
+
+	/**
+	 * render every captured polygon that falls within a region
+	 *
+	 * @param g2d graphics to paint on
+	 * @param renderer renderer owned by the calling thread
+	 * @param originX x coordinate, in g2d's space, of the world origin
+	 * @param originY y coordinate, in g2d's space, of the world origin
+	 * @param x left edge of the region
+	 * @param y top edge of the region
+	 * @param width width of the region
+	 * @param height height of the region
+	 */
+	public void paint(Graphics2D g2d, OverlayRenderer renderer, int originX, int originY,
+						int x, int y, int width, int height) {
+		RenderQualityPolicy.applyHints(g2d, quality);
+		for (int i = 0; i < rings.length; ++i) {
+			if (rings[i] != null) {
+				renderer.paint(g2d, rings[i], styles[i], mapWidth, originX, originY, x, y, width, height);
+			}
+		}
+	}
+
+	/**
+	 * check whether this snapshot shows the map as it currently is; the map's VertexBuffer is projected
+	 * first, so rings that have been simplified or reprojected since the snapshot make it out of date
+	 * 
+	 * @return true if this snapshot shows the map as it currently is
+	 */
+	public boolean isCurrent(Map map) {
+		map.projectVertexBuffer();
+		return projectionId == map.getVertexBuffer().getProjectionId()
+				&& zoom == map.getZoom()
+				&& viewMode == map.getViewMode()
+				&& simpleRender == map.getSimpleRender()
+				&& selectionHash == map.getSelectionHash()
+				&& quality == map.getQualityPolicy().getLevel();
+	}
+
+	//accessors
+	public int getZoom() { return zoom; }
+	public ViewMode getViewMode() { return viewMode; }
+	public boolean getSimpleRender() { return simpleRender; }
+	public long getSelectionHash() { return selectionHash; }
+	/**
+	 * @return the RenderQualityPolicy level this snapshot draws at, 0 for full quality
+	 */
+	public int getQuality() { return quality; }
+}
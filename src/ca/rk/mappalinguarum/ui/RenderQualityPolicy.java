@@ -0,0 +1,164 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+/**
+ * decides how carefully the language overlay is drawn
+ *
+ * while the map is being dragged or zoomed, quality drops to an interactive level, and once the map
+ * has been still for a moment it goes back to full quality and the map is repainted; the interactive
+ * level adapts to the measured cost of a frame, going one step coarser whenever it averages more than
+ * a frame, and one step finer when it averages under a third of one, so slow machines give up as
+ * much as they need to and fast ones only give up antialiasing
+ *
+ * the cost of a frame is the longer of the paint on the event thread, which mostly blits cached
+ * overlay tiles, and the time the overlay workers need for the tiles still queued after it, at the
+ * rate they've been rendering tiles, since that's where the polygons are actually filled
+ *
+ * levels, each including the ones before:
+ * 1 - no antialiasing, speed over colour accuracy
+ * 2 - flat colours instead of textures
+ * 3 - rings simplified as for a zoom level DETAIL_BIAS levels out
+ *
+ * all methods must be called on the event thread
+ *
+ * @author RK
+ *
+ */
+public class RenderQualityPolicy implements ActionListener {
+
+	public static final int FULL_QUALITY = 0;
+	public static final int MIN_INTERACTIVE_QUALITY = 1;
+	public static final int MAX_INTERACTIVE_QUALITY = 3;
+	/**
+	 * how many zoom levels coarser the outlines are at the lowest quality
+	 */
+	public static final int DETAIL_BIAS = 2;
+	/**
+	 * how long the map has to be still before it's drawn at full quality again, in milliseconds
+	 */
+	private static final int IDLE_DELAY = 250;
+	private static final double AVERAGE_WEIGHT = 0.25;
+
+	private Map map;
+	private Timer idleTimer;
+	private int level = FULL_QUALITY;
+	private int interactiveLevel = MIN_INTERACTIVE_QUALITY;
+	private double averagePaintMillis = 0;
+	/**
+	 * average time a tile rendered at an interactive level takes the whole worker pool
+	 */
+	private double averageTileMillis = 0;
+
+	/**
+	 * constructs a RenderQualityPolicy for the input Map, starting at full quality
+	 *
+	 * @param m the Map to repaint once it's idle
+	 */
+	public RenderQualityPolicy(Map m) {
+		map = m;
+		idleTimer = new Timer(IDLE_DELAY, this);
+		idleTimer.setRepeats(false);
+	}
+
+	/**
+	 * the map is moving; drop to the interactive level until it has been still for IDLE_DELAY
+	 */
+	public void noteInteraction() {
+		level = interactiveLevel;
+		idleTimer.restart();
+	}
+
+	/**
+	 * idle timer callback; restore full quality
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		if (level != FULL_QUALITY) {
+			level = FULL_QUALITY;
+			map.repaint();
+		}
+	}
+
+	/**
+	 * adapt the interactive level to the cost of a frame against the frame budget;
+	 * paints at full quality don't count, since they don't happen while the map is moving
+	 *
+	 * @param millis duration of the paint
+	 * @param backlog overlay tiles queued for rendering once the paint is over
+	 * @param budgetMillis time available per frame
+	 */
+	public void recordPaint(double millis, int backlog, double budgetMillis) {
+		if (level == FULL_QUALITY) {
+			return;
+		}
+		final double cost = Math.max(millis, backlog * averageTileMillis);
+		averagePaintMillis = average(averagePaintMillis, cost);
+		if (averagePaintMillis > budgetMillis && interactiveLevel < MAX_INTERACTIVE_QUALITY) {
+			++interactiveLevel;
+			averagePaintMillis = 0;
+		}
+		else if (averagePaintMillis < budgetMillis / 3 && interactiveLevel > MIN_INTERACTIVE_QUALITY) {
+			--interactiveLevel;
+			averagePaintMillis = 0;
+		}
+		level = interactiveLevel;
+	}
+
+	/**
+	 * take how long an overlay worker took to render a tile into the rate the backlog is weighed at;
+	 * tiles rendered at full quality don't count, since they're only rendered once the map is still
+	 *
+	 * @param millis how long the worker took
+	 * @param quality the level the tile was rendered at
+	 * @param workers how many workers render tiles side by side
+	 */
+	public void recordTileRender(double millis, int quality, int workers) {
+		if (quality == FULL_QUALITY) {
+			return;
+		}
+		averageTileMillis = average(averageTileMillis, millis / workers);
+	}
+
+	/**
+	 * @return the running average with a new sample, or the sample if there is no average yet
+	 */
+	private static double average(double average, double sample) {
+		return average == 0 ? sample : average + AVERAGE_WEIGHT * (sample - average);
+	}
+
+	/**
+	 * set antialiasing and colour rendering hints for a quality level; safe to call from any thread
+	 *
+	 * @param g2d graphics to set the hints on
+	 * @param level the quality level to draw at
+	 */
+	public static void applyHints(Graphics2D g2d, int level) {
+		if (level < MIN_INTERACTIVE_QUALITY) {
+			g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+		}
+		else {
+			g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+		}
+	}
+
+	//accessors
+	public int getLevel() { return level; }
+	public int getInteractiveLevel() { return interactiveLevel; }
+	public boolean isAntialiased() { return level < 1; }
+	/**
+	 * @return false if textures should be drawn as flat colours, whatever the render mode
+	 */
+	public boolean isTextured() { return level < 2; }
+	/**
+	 * @return how many zoom levels coarser than the map's the outlines should be
+	 */
+	public int getDetailBias() { return level < 3 ? 0 : DETAIL_BIAS; }
+}
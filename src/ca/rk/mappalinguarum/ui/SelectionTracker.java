@@ -4,14 +4,16 @@ import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.JCheckBox;
 
 import ca.rk.mappalinguarum.model.Feature;
 import ca.rk.mappalinguarum.model.LanguageFamily;
 import ca.rk.mappalinguarum.model.Location;
-import ca.rk.mappalinguarum.model.MapData;
+import ca.rk.mappalinguarum.util.PhaseProfiler;
 
 
 /**
@@ -31,54 +33,75 @@ public class SelectionTracker implements ItemListener {
 	private java.util.Map<JCheckBox, LanguageFamily> familyDictionary;
 	private java.util.Map<JCheckBox, Feature> featureDictionary;
 	private java.util.Map<JCheckBox, Location> langLocDictionary;
+	/**
+	 * families and features that already have a checkbox
+	 */
+	private Set<LanguageFamily> seenFamilies;
+	private Set<Feature> seenFeatures;
 	
 	/**
-	 * constructs a SelectionTracker associated with input Map object and creates
-	 * components from parsed data
+	 * constructs a SelectionTracker associated with input Map object, with no checkboxes until
+	 * languages are added
 	 * 
 	 * @param m the Map object this is for
 	 */
 	public SelectionTracker(ca.rk.mappalinguarum.ui.Map m) {
 		map = m;
-		createComponents(map.getData() );
+		familyCheckBoxes = new ArrayList<JCheckBox>();
+		familyDictionary = new HashMap<JCheckBox, LanguageFamily>();
+		featureCheckBoxes = new ArrayList<JCheckBox>();
+		featureDictionary = new HashMap<JCheckBox, Feature>();
+		languageCheckBoxes = new ArrayList<JCheckBox>();
+		langLocDictionary = new HashMap<JCheckBox, Location>();
+		seenFamilies = new HashSet<LanguageFamily>();
+		seenFeatures = new HashSet<Feature>();
 	}
 	
 	/**
-	 * load information from input MapData into memory and create checkboxes
+	 * create checkboxes for a batch of newly parsed Locations: one per language, and one for each family
+	 * and feature not seen in an earlier language, so families and features keep the order they were first
+	 * parsed in
 	 * 
-	 * @param data the MapData object to extract information from
+	 * @param locs the Locations to add
 	 */
-	private void createComponents(MapData data) {
-		List<LanguageFamily> fams = data.getAllFamilies();
-		familyCheckBoxes = new ArrayList<JCheckBox>(fams.size() );
-		familyDictionary = new HashMap<JCheckBox, LanguageFamily>(fams.size() );
-		for (LanguageFamily anLF : fams) {
-			JCheckBox lfCheckBox = new JCheckBox(anLF.toString(), false);
-			lfCheckBox.addItemListener(this);
-			familyDictionary.put(lfCheckBox, anLF);
-			familyCheckBoxes.add(lfCheckBox);
-		}
-				
-		List<Feature> features = data.getAllFeatures();
-		featureCheckBoxes = new ArrayList<JCheckBox>(features.size() );
-		featureDictionary = new HashMap<JCheckBox, Feature>(features.size() );
-		for (Feature aFeature : features) {
-			JCheckBox fCheckBox = new JCheckBox(aFeature.toString(), false);
-			fCheckBox.addItemListener(this);
-			featureDictionary.put(fCheckBox, aFeature);
-			featureCheckBoxes.add(fCheckBox);
+	public void addLocations(List<Location> locs) {
+		PhaseProfiler.Phase phase = PhaseProfiler.getInstance().start("checkboxes");
+		try {
+			for (Location aLoc : locs) {
+				for (LanguageFamily anLF : aLoc.getLanguage().getFamilies()) {
+					if ( seenFamilies.add(anLF) ) {
+						JCheckBox lfCheckBox = createCheckBox(anLF.toString(), familyCheckBoxes);
+						familyDictionary.put(lfCheckBox, anLF);
+					}
+				}
+				for (Feature aFeature : aLoc.getLanguage().getFeatures()) {
+					if ( seenFeatures.add(aFeature) ) {
+						JCheckBox fCheckBox = createCheckBox(aFeature.toString(), featureCheckBoxes);
+						featureDictionary.put(fCheckBox, aFeature);
+					}
+				}
+				JCheckBox langCheckBox = createCheckBox(aLoc.getLanguage().getCommonName(), languageCheckBoxes);
+				langLocDictionary.put(langCheckBox, aLoc);
+			}
 		}
-		
-		List<Location> locs = data.getLocations();
-		languageCheckBoxes = new ArrayList<JCheckBox>(locs.size() );
-		langLocDictionary = new HashMap<JCheckBox, Location>(locs.size() );
-		for (Location aLoc : locs) {
-			JCheckBox langCheckBox = new JCheckBox(aLoc.getLanguage().getCommonName(), false);
-			langCheckBox.addItemListener(this);
-			langLocDictionary.put(langCheckBox, aLoc);
-			languageCheckBoxes.add(langCheckBox);
+		finally {
+			phase.close();
 		}
 	}
+	
+	/**
+	 * create an unchecked checkbox listened to by this and add it to a list
+	 * 
+	 * @param label text of the checkbox
+	 * @param checkBoxes the list to add it to
+	 * @return the new checkbox
+	 */
+	private JCheckBox createCheckBox(String label, List<JCheckBox> checkBoxes) {
+		JCheckBox checkBox = new JCheckBox(label, false);
+		checkBox.addItemListener(this);
+		checkBoxes.add(checkBox);
+		return checkBox;
+	}
 
 	/**
 	 * when a checkbox gets selected or deselected, change display on the map accordingly
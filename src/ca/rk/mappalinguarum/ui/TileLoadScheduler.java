@@ -0,0 +1,375 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileCache;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileLoader;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
+
+import ca.rk.mappalinguarum.util.tiles.TilePack;
+
+/**
+ * decides which map tiles get loaded, and in which order
+ *
+ * JMapViewer asks its TileLoader for a job every time it paints a tile that isn't loaded, and runs
+ * the jobs in the order they were asked for; installed as the map's TileLoader, a TileLoadScheduler
+ * instead records each request and hands back a job that does nothing, and its own threads load the
+ * requested tiles nearest the centre of the view first, with the loader it wraps; at most
+ * MAX_IN_FLIGHT tiles are loaded at a time, a tile requested again while it waits is not queued twice,
+ * and every time the view changes, requests for tiles that have scrolled out of view or belong to
+ * another zoom level are dropped before they're loaded
+ *
+ * prefetches, which are for tiles not yet in view, wait behind every tile that is
+ *
+ * @author RK
+ *
+ */
+public class TileLoadScheduler implements TileLoader {
+
+	/**
+	 * how many tiles may be loading at once
+	 */
+	public static final int MAX_IN_FLIGHT = 4;
+	/**
+	 * tiles this many tiles outside the viewport still count as in view
+	 */
+	private static final int VIEW_MARGIN = 1;
+	/**
+	 * added to the priority of prefetches, so they come after any tile in view
+	 */
+	private static final double PREFETCH_PENALTY = 1e9;
+	private static final Runnable NO_JOB = () -> {};
+
+	private Map map;
+	private TileLoader loader;
+	private PriorityQueue<Request> queue = new PriorityQueue<Request>();
+	/**
+	 * every request queued or loading, by tile
+	 */
+	private HashMap<Long, Request> requests = new HashMap<Long, Request>();
+	private volatile View view;
+
+	private long loadedCount = 0;
+	private long prefetchedCount = 0;
+	private long wastedCount = 0;
+	private long cancelledCount = 0;
+	private int inFlightCount = 0;
+
+	/**
+	 * constructs a TileLoadScheduler that loads tiles for the input Map with the input loader,
+	 * and starts its threads
+	 *
+	 * @param m the Map to load tiles for
+	 * @param l the TileLoader that actually loads tiles
+	 */
+	public TileLoadScheduler(Map m, TileLoader l) {
+		map = m;
+		loader = l;
+		view = new View(map);
+		for (int i = 1; i <= MAX_IN_FLIGHT; ++i) {
+			Thread thread = new Thread(this::work, "tile-loader-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * record a request for a tile JMapViewer is painting
+	 *
+	 * @return a job that does nothing; the tile is loaded in its turn by this scheduler's threads
+	 */
+	@Override
+	public Runnable createTileLoaderJob(TileSource source, int x, int y, int zoom) {
+		request(source, x, y, zoom, false);
+		return NO_JOB;
+	}
+
+	/**
+	 * replace the queued prefetches with the input tiles, in order of preference
+	 *
+	 * @param source the tile source the tiles are from
+	 * @param keys tile positions, as packed by TilePack.toKey
+	 */
+	public void prefetch(TileSource source, Collection<Long> keys) {
+		synchronized (this) {
+			HashSet<Long> kept = new HashSet<Long>(keys);
+			ArrayList<Request> dropped = new ArrayList<Request>();
+			for (Request r : queue) {
+				if (r.isPrefetch && !kept.contains(r.key)) {
+					dropped.add(r);
+				}
+			}
+			for (Request r : dropped) {
+				queue.remove(r);
+				requests.remove(r.key);
+				++cancelledCount;
+			}
+		}
+		int rank = 0;
+		for (long key : keys) {
+			request(source, (int) (key >>> 24) & 0xFFFFFF, (int) key & 0xFFFFFF, (int) (key >>> 48), true);
+			//keep the order the prefetches were given in
+			Request r;
+			synchronized (this) {
+				r = requests.get(key);
+				if (r != null && r.isPrefetch && queue.remove(r)) {
+					r.priority = PREFETCH_PENALTY + rank;
+					queue.add(r);
+				}
+			}
+			++rank;
+		}
+	}
+
+	/**
+	 * queue a tile, or if it's already queued, move it to where it now belongs in the queue
+	 */
+	private synchronized void request(TileSource source, int x, int y, int zoom, boolean isPrefetch) {
+		final long key = TilePack.toKey(zoom, x, y);
+		Request r = requests.get(key);
+		if (r == null) {
+			r = new Request(source, x, y, zoom, key);
+			r.isPrefetch = isPrefetch;
+			r.priority = view.priority(r);
+			requests.put(key, r);
+			queue.add(r);
+			notify();
+		}
+		else if (!isPrefetch && r.isPrefetch && queue.remove(r)) {
+			//the tile has come into view before its prefetch ran
+			r.isPrefetch = false;
+			r.priority = view.priority(r);
+			queue.add(r);
+		}
+	}
+
+	/**
+	 * note where the map is now, drop requests for tiles that have left the view and reorder the rest;
+	 * must be called on the event thread whenever the view may have changed
+	 */
+	public void update() {
+		View current = new View(map);
+		if (current.equals(view)) {
+			return;
+		}
+		view = current;
+		synchronized (this) {
+			ArrayList<Request> kept = new ArrayList<Request>(queue.size());
+			for (Request r : queue) {
+				if (r.isPrefetch || current.contains(r)) {
+					r.priority = r.isPrefetch ? r.priority : current.priority(r);
+					kept.add(r);
+				}
+				else {
+					requests.remove(r.key);
+					++cancelledCount;
+				}
+			}
+			queue.clear();
+			queue.addAll(kept);
+		}
+	}
+
+	/**
+	 * the loop of each loading thread: take the most urgent request, make sure its tile is in the cache,
+	 * and load it
+	 */
+	private void work() {
+		while (true) {
+			Request r;
+			synchronized (this) {
+				while (queue.isEmpty()) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				r = queue.poll();
+				++inFlightCount;
+			}
+
+			boolean isLoaded = false;
+			try {
+				isLoaded = load(r);
+			}
+			catch (RuntimeException e) {
+				TextConsole.writeLine("An error occurred while loading a map tile.");
+				e.printStackTrace();
+			}
+
+			synchronized (this) {
+				--inFlightCount;
+				requests.remove(r.key);
+				if (isLoaded) {
+					++loadedCount;
+					if (r.isPrefetch) {
+						++prefetchedCount;
+					}
+					else if (!view.contains(r)) {
+						++wastedCount;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * load the tile of a request with the wrapped loader, unless it's already loaded or loading
+	 *
+	 * @return true if the tile was loaded by this call
+	 */
+	private boolean load(Request r) {
+		TileCache cache = map.getTileCache();
+		Tile tile;
+		//the same lock JMapViewer's loaders take on the cache
+		synchronized (cache) {
+			tile = cache.getTile(r.source, r.x, r.y, r.zoom);
+			if (tile == null) {
+				tile = new Tile(r.source, r.x, r.y, r.zoom);
+				cache.addTile(tile);
+			}
+		}
+		if (tile.isLoaded() || tile.isLoading()) {
+			return false;
+		}
+		loader.createTileLoaderJob(r.source, r.x, r.y, r.zoom).run();
+		return true;
+	}
+
+	//accessors
+	public synchronized long getLoadedCount() { return loadedCount; }
+	/**
+	 * @return how many of the tiles loaded were prefetches
+	 */
+	public synchronized long getPrefetchedCount() { return prefetchedCount; }
+	/**
+	 * @return how many tiles finished loading after they'd left the view
+	 */
+	public synchronized long getWastedCount() { return wastedCount; }
+	/**
+	 * @return how many requests were dropped before they were loaded
+	 */
+	public synchronized long getCancelledCount() { return cancelledCount; }
+	public synchronized int getQueuedCount() { return queue.size(); }
+	public synchronized int getInFlightCount() { return inFlightCount; }
+
+	/**
+	 * a tile someone asked for; ordered by priority, lowest first
+	 */
+	private static final class Request implements Comparable<Request> {
+		private final TileSource source;
+		private final int x;
+		private final int y;
+		private final int zoom;
+		private final long key;
+		private boolean isPrefetch;
+		private double priority;
+
+		private Request(TileSource source, int x, int y, int zoom, long key) {
+			this.source = source;
+			this.x = x;
+			this.y = y;
+			this.zoom = zoom;
+			this.key = key;
+		}
+
+		@Override
+		public int compareTo(Request other) {
+			return Double.compare(priority, other.priority);
+		}
+	}
+
+	/**
+	 * which tiles the map shows at one moment, in tile units
+	 */
+	private static final class View {
+		private final int zoom;
+		private final int tilesAcross;
+		private final int firstX;
+		private final int lastX;
+		private final int firstY;
+		private final int lastY;
+		private final double centreX;
+		private final double centreY;
+
+		private View(Map map) {
+			final int tileSize = map.getTileSize();
+			zoom = map.getZoom();
+			tilesAcross = 1 << zoom;
+			firstX = Math.floorDiv(-map.getOriginX(), tileSize) - VIEW_MARGIN;
+			lastX = Math.floorDiv(map.getWidth() - 1 - map.getOriginX(), tileSize) + VIEW_MARGIN;
+			firstY = Math.floorDiv(-map.getOriginY(), tileSize) - VIEW_MARGIN;
+			lastY = Math.floorDiv(map.getHeight() - 1 - map.getOriginY(), tileSize) + VIEW_MARGIN;
+			centreX = (map.getWidth() / 2.0 - map.getOriginX()) / tileSize;
+			centreY = (map.getHeight() / 2.0 - map.getOriginY()) / tileSize;
+		}
+
+		/**
+		 * @return true if the tile of the request, or any wrapped copy of it, is in view
+		 */
+		private boolean contains(Request r) {
+			if (r.zoom != zoom || r.y < firstY || r.y > lastY) {
+				return false;
+			}
+			return Math.floorMod(r.x - firstX, tilesAcross) <= lastX - firstX;
+		}
+
+		/**
+		 * @return squared distance, in tiles, from the centre of the view to the centre of the
+		 * nearest copy of the request's tile, plus the penalty for a prefetch or another zoom level
+		 */
+		private double priority(Request r) {
+			if (r.isPrefetch) {
+				return PREFETCH_PENALTY;
+			}
+			if (r.zoom != zoom) {
+				return PREFETCH_PENALTY / 2;
+			}
+			double dx = Math.abs(r.x + 0.5 - centreX) % tilesAcross;
+			dx = Math.min(dx, tilesAcross - dx);
+			final double dy = r.y + 0.5 - centreY;
+			return dx * dx + dy * dy;
+		}
+
+		/**
+		 * generated by Eclipse
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof View)) {
+				return false;
+			}
+			View other = (View) obj;
+			return zoom == other.zoom && firstX == other.firstX && lastX == other.lastX
+					&& firstY == other.firstY && lastY == other.lastY
+					&& centreX == other.centreX && centreY == other.centreY;
+		}
+
+		/**
+		 * generated by Eclipse
+		 */
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + zoom;
+			result = prime * result + firstX;
+			result = prime * result + firstY;
+			long temp = Double.doubleToLongBits(centreX);
+			result = prime * result + (int) (temp ^ (temp >>> 32));
+			temp = Double.doubleToLongBits(centreY);
+			result = prime * result + (int) (temp ^ (temp >>> 32));
+			return result;
+		}
+	}
+}
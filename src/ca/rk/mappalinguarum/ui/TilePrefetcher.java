@@ -0,0 +1,182 @@
+package ca.rk.mappalinguarum.ui;
+
+import java.awt.Point;
+import java.util.LinkedHashSet;
+
+import ca.rk.mappalinguarum.util.tiles.TilePack;
+
+/**
+ * loads map tiles before they come into view, guessing where the view is going from how the map
+ * is being dragged and which way the wheel last turned
+ *
+ * while the map is dragged, the tiles that the viewport will reach in the next LOOKAHEAD milliseconds
+ * at the current speed are queued, nearest first; after a wheel turn, the tiles around the pointer
+ * one zoom level further in that direction are queued; the plan is worked out again every frame, and
+ * whenever it changes, it replaces the prefetches still waiting in the map's TileLoadScheduler, which
+ * loads them only when no tile in view is waiting
+ *
+ * all methods must be called on the event thread
+ *
+ * @author RK
+ *
+ */
+public class TilePrefetcher {
+
+	/**
+	 * how far ahead, in milliseconds of motion at the current speed, to fetch tiles
+	 */
+	private static final int LOOKAHEAD = 500;
+	/**
+	 * a drag this long ago, in milliseconds, is no longer motion
+	 */
+	private static final int MOTION_TIMEOUT = 150;
+	/**
+	 * a wheel turn this long ago, in milliseconds, no longer says which way the user is zooming
+	 */
+	private static final int ZOOM_TIMEOUT = 2000;
+	/**
+	 * how many tiles around the pointer, in each direction, to fetch at the next zoom level
+	 */
+	private static final int ZOOM_RADIUS = 1;
+	private static final int MAX_PREFETCHES = 32;
+	private static final double AVERAGE_WEIGHT = 0.3;
+
+	private Map map;
+	private LinkedHashSet<Long> plan = new LinkedHashSet<Long>();
+
+	private Point lastDragPoint;
+	private long lastDragTime;
+	/**
+	 * velocity of the map centre in pixels per millisecond
+	 */
+	private double velocityX = 0;
+	private double velocityY = 0;
+	/**
+	 * 1 after the wheel last zoomed in, -1 after it last zoomed out, 0 before any wheel turn
+	 */
+	private int zoomDirection = 0;
+	private Point zoomPoint;
+	private long lastWheelTime;
+
+	/**
+	 * constructs a TilePrefetcher for the input Map
+	 *
+	 * @param m the Map to fetch tiles for
+	 */
+	public TilePrefetcher(Map m) {
+		map = m;
+	}
+
+	/**
+	 * a drag has started at the input point
+	 */
+	public void noteDragStart(Point p) {
+		lastDragPoint = p;
+		lastDragTime = System.nanoTime();
+		velocityX = velocityY = 0;
+	}
+
+	/**
+	 * the mouse has been dragged to the input point; the map centre moves the opposite way
+	 */
+	public void noteDrag(Point p) {
+		final long now = System.nanoTime();
+		if (lastDragPoint != null) {
+			final double millis = Math.max(1, (now - lastDragTime) / 1e6);
+			velocityX += AVERAGE_WEIGHT * ( (lastDragPoint.x - p.x) / millis - velocityX );
+			velocityY += AVERAGE_WEIGHT * ( (lastDragPoint.y - p.y) / millis - velocityY );
+		}
+		lastDragPoint = p;
+		lastDragTime = now;
+	}
+
+	/**
+	 * the wheel has turned at the input point
+	 *
+	 * @param rotation wheel rotation, negative to zoom in
+	 */
+	public void noteWheel(int rotation, Point p) {
+		zoomDirection = rotation < 0 ? 1 : -1;
+		zoomPoint = p;
+		lastWheelTime = System.nanoTime();
+	}
+
+	/**
+	 * work out which tiles to prefetch now, and if that's changed, replace the queued prefetches
+	 */
+	public void update() {
+		LinkedHashSet<Long> newPlan = new LinkedHashSet<Long>();
+		final long now = System.nanoTime();
+		if (lastDragPoint != null && (now - lastDragTime) / 1000000 < MOTION_TIMEOUT) {
+			planAhead(newPlan);
+		}
+		if (zoomDirection != 0 && (now - lastWheelTime) / 1000000 < ZOOM_TIMEOUT) {
+			planZoom(newPlan);
+		}
+		if (newPlan.equals(plan)) {
+			return;
+		}
+
+		//the view is going somewhere else; drop whatever hasn't started
+		plan = newPlan;
+		map.getTileScheduler().prefetch(map.getTileController().getTileSource(), plan);
+	}
+
+	/**
+	 * add the tiles the viewport will move over, in steps of one tile, nearest first
+	 */
+	private void planAhead(LinkedHashSet<Long> newPlan) {
+		final int tileSize = map.getTileSize();
+		final int zoom = map.getZoom();
+		final double shiftX = velocityX * LOOKAHEAD;
+		final double shiftY = velocityY * LOOKAHEAD;
+		final int steps = (int) Math.ceil( Math.max(Math.abs(shiftX), Math.abs(shiftY)) / tileSize );
+		final int originX = map.getOriginX();
+		final int originY = map.getOriginY();
+		for (int step = 1; step <= steps && newPlan.size() < MAX_PREFETCHES; ++step) {
+			//the viewport, in world pixels, after this step of the motion
+			final int left = (int) (-originX + shiftX * step / steps);
+			final int top = (int) (-originY + shiftY * step / steps);
+			addTiles(newPlan, zoom, Math.floorDiv(left, tileSize), Math.floorDiv(top, tileSize),
+					Math.floorDiv(left + map.getWidth() - 1, tileSize), Math.floorDiv(top + map.getHeight() - 1, tileSize));
+		}
+	}
+
+	/**
+	 * add the tiles around the pointer at the next zoom level in the direction the wheel last turned
+	 */
+	private void planZoom(LinkedHashSet<Long> newPlan) {
+		final int zoom = map.getZoom() + zoomDirection;
+		if (zoom < 0 || zoom > map.getTileController().getTileSource().getMaxZoom()) {
+			return;
+		}
+		final int tileSize = map.getTileSize();
+		//the pointer's world position, scaled to the next zoom level
+		final long worldX = (long) (zoomPoint.x - map.getOriginX());
+		final long worldY = (long) (zoomPoint.y - map.getOriginY());
+		final int tileX = (int) Math.floorDiv(zoomDirection > 0 ? worldX << 1 : worldX >> 1, (long) tileSize);
+		final int tileY = (int) Math.floorDiv(zoomDirection > 0 ? worldY << 1 : worldY >> 1, (long) tileSize);
+		addTiles(newPlan, zoom, tileX - ZOOM_RADIUS, tileY - ZOOM_RADIUS, tileX + ZOOM_RADIUS, tileY + ZOOM_RADIUS);
+	}
+
+	/**
+	 * add every tile in a range that isn't on screen already, wrapping x around the world
+	 */
+	private void addTiles(LinkedHashSet<Long> newPlan, int zoom, int firstX, int firstY, int lastX, int lastY) {
+		final int tilesAcross = 1 << zoom;
+		final int tileSize = map.getTileSize();
+		final boolean isCurrentZoom = zoom == map.getZoom();
+		final int visibleLeft = Math.floorDiv(-map.getOriginX(), tileSize);
+		final int visibleRight = Math.floorDiv(map.getWidth() - 1 - map.getOriginX(), tileSize);
+		final int visibleTop = Math.floorDiv(-map.getOriginY(), tileSize);
+		final int visibleBottom = Math.floorDiv(map.getHeight() - 1 - map.getOriginY(), tileSize);
+		for (int y = Math.max(0, firstY); y <= Math.min(tilesAcross - 1, lastY); ++y) {
+			for (int x = firstX; x <= lastX && newPlan.size() < MAX_PREFETCHES; ++x) {
+				if (isCurrentZoom && x >= visibleLeft && x <= visibleRight && y >= visibleTop && y <= visibleBottom) {
+					continue;
+				}
+				newPlan.add( TilePack.toKey(zoom, Math.floorMod(x, tilesAcross), y) );
+			}
+		}
+	}
+}
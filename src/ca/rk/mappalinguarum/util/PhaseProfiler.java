@@ -0,0 +1,248 @@
+package ca.rk.mappalinguarum.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * records how much wall time, CPU time and memory allocation named phases of work take, so that slow
+ * startups can be traced to the phase responsible
+ *
+ * a phase is timed from start() until the returned Phase is closed, on the thread that started it,
+ * in a finally block so a failed run is counted too;
+ * a phase run more than once, or on several threads at once, adds up every run, so its wall time
+ * can be more than the time that went by; CPU time and allocated bytes are those of the running
+ * thread, and are -1 where the JVM can't measure them
+ *
+ * safe to use from any thread
+ *
+ * @author RK
+ *
+ */
+public class PhaseProfiler {
+
+	private static PhaseProfiler profiler;
+
+	private final ThreadMXBean threads;
+	private final com.sun.management.ThreadMXBean allocations;
+	private final long startTime;
+	/**
+	 * totals by phase name, in the order phases were first started; guarded by this
+	 */
+	private LinkedHashMap<String, Totals> phases = new LinkedHashMap<String, Totals>();
+
+	/**
+	 * constructs a PhaseProfiler with no phases, counting elapsed time from now
+	 */
+	public PhaseProfiler() {
+		startTime = System.nanoTime();
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		threads = bean.isCurrentThreadCpuTimeSupported() ? bean : null;
+		if (threads != null && !threads.isThreadCpuTimeEnabled()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+		com.sun.management.ThreadMXBean sunBean = bean instanceof com.sun.management.ThreadMXBean ?
+				(com.sun.management.ThreadMXBean) bean : null;
+		if (sunBean != null && sunBean.isThreadAllocatedMemorySupported()) {
+			sunBean.setThreadAllocatedMemoryEnabled(true);
+			allocations = sunBean;
+		}
+		else {
+			allocations = null;
+		}
+	}
+
+	/**
+	 * gets the application-wide instance, creating it if it's null; it counts elapsed time from
+	 * its creation, so it should first be asked for as the application starts
+	 *
+	 * @return the PhaseProfiler object
+	 */
+	public static synchronized PhaseProfiler getInstance() {
+		if (profiler == null) {
+			profiler = new PhaseProfiler();
+		}
+		return profiler;
+	}
+
+	/**
+	 * start timing a phase on the current thread
+	 *
+	 * @param name the phase, under which every run is added up
+	 * @return the running phase, to be closed on the same thread when the work is done
+	 */
+	public Phase start(String name) {
+		return new Phase(name);
+	}
+
+	/**
+	 * @return a line per phase, in the order phases were first started, after a line of time elapsed
+	 */
+	public synchronized List<String> getSummary() {
+		List<String> lines = new ArrayList<String>();
+		lines.add( String.format("Startup profile, %.0f ms elapsed:", getElapsedNanos() / 1e6) );
+		for (java.util.Map.Entry<String, Totals> entry : phases.entrySet()) {
+			Totals t = entry.getValue();
+			StringBuilder buildar = new StringBuilder();
+			buildar.append( String.format("  %s: %.1f ms", entry.getKey(), t.wallNanos / 1e6) );
+			if (t.cpuNanos >= 0) {
+				buildar.append( String.format(", %.1f ms CPU", t.cpuNanos / 1e6) );
+			}
+			if (t.allocatedBytes >= 0) {
+				buildar.append( String.format(", %.1f MB allocated", t.allocatedBytes / (1024.0 * 1024.0)) );
+			}
+			if (t.count > 1) {
+				buildar.append(" over " + t.count + " runs");
+			}
+			lines.add( buildar.toString() );
+		}
+		return lines;
+	}
+
+	/**
+	 * @return every phase's totals as a JSON object, times in nanoseconds
+	 */
+	public synchronized String toJSON() {
+		StringBuilder buildar = new StringBuilder();
+		buildar.append("{\n  \"elapsedNanos\": ").append( getElapsedNanos() ).append(",\n  \"phases\": [");
+		String separator = "\n";
+		for (java.util.Map.Entry<String, Totals> entry : phases.entrySet()) {
+			Totals t = entry.getValue();
+			buildar.append(separator)
+				.append("    {\"name\": \"").append( escape( entry.getKey() ) )
+				.append("\", \"count\": ").append(t.count)
+				.append(", \"wallNanos\": ").append(t.wallNanos)
+				.append(", \"cpuNanos\": ").append(t.cpuNanos)
+				.append(", \"allocatedBytes\": ").append(t.allocatedBytes)
+				.append("}");
+			separator = ",\n";
+		}
+		buildar.append("\n  ]\n}\n");
+		return buildar.toString();
+	}
+
+	/**
+	 * write toJSON() to a file, replacing any there
+	 *
+	 * @param f the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void writeJSON(File f) throws IOException {
+		Files.write( f.toPath(), toJSON().getBytes(StandardCharsets.UTF_8) );
+	}
+
+	/**
+	 * @return the input with quotes, backslashes and control characters escaped for a JSON string
+	 */
+	private static String escape(String s) {
+		StringBuilder buildar = new StringBuilder();
+		for (char c : s.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				buildar.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				buildar.append( String.format("\\u%04x", (int) c) );
+			}
+			else {
+				buildar.append(c);
+			}
+		}
+		return buildar.toString();
+	}
+
+	/**
+	 * add a finished run to a phase's totals
+	 */
+	private synchronized void add(String name, long wallNanos, long cpuNanos, long allocatedBytes) {
+		Totals t = phases.get(name);
+		if (t == null) {
+			t = new Totals();
+			phases.put(name, t);
+		}
+		++t.count;
+		t.wallNanos += wallNanos;
+		t.cpuNanos = cpuNanos < 0 || t.cpuNanos < 0 ? -1 : t.cpuNanos + cpuNanos;
+		t.allocatedBytes = allocatedBytes < 0 || t.allocatedBytes < 0 ? -1 : t.allocatedBytes + allocatedBytes;
+	}
+
+	/**
+	 * @return CPU time of the current thread in nanoseconds, or -1 if it can't be measured
+	 */
+	private long currentCpuNanos() {
+		return threads == null ? -1 : threads.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far, or -1 if it can't be measured
+	 */
+	private long currentAllocatedBytes() {
+		return allocations == null ? -1 : allocations.getThreadAllocatedBytes( Thread.currentThread().getId() );
+	}
+
+	//accessors
+	public long getElapsedNanos() { return System.nanoTime() - startTime; }
+	/**
+	 * @return number of times a phase has run, 0 if it never has
+	 */
+	public synchronized long getCount(String name) {
+		Totals t = phases.get(name);
+		return t == null ? 0 : t.count;
+	}
+	/**
+	 * @return total wall time of a phase in nanoseconds, 0 if it never ran
+	 */
+	public synchronized long getWallNanos(String name) {
+		Totals t = phases.get(name);
+		return t == null ? 0 : t.wallNanos;
+	}
+
+	/**
+	 * one run of a phase, timed from its creation until it's closed
+	 */
+	public class Phase implements AutoCloseable {
+		private final String name;
+		private final long wallStart;
+		private final long cpuStart;
+		private final long allocatedStart;
+		private boolean isClosed = false;
+
+		private Phase(String name) {
+			this.name = name;
+			cpuStart = currentCpuNanos();
+			allocatedStart = currentAllocatedBytes();
+			wallStart = System.nanoTime();
+		}
+
+		/**
+		 * stop timing and add this run to the phase's totals; closing again does nothing
+		 */
+		@Override
+		public void close() {
+			if (isClosed) {
+				return;
+			}
+			isClosed = true;
+			final long wall = System.nanoTime() - wallStart;
+			final long cpuEnd = currentCpuNanos();
+			final long allocatedEnd = currentAllocatedBytes();
+			add(name, wall, cpuStart < 0 || cpuEnd < 0 ? -1 : cpuEnd - cpuStart,
+					allocatedStart < 0 || allocatedEnd < 0 ? -1 : allocatedEnd - allocatedStart);
+		}
+	}
+
+	/**
+	 * running totals of a phase
+	 */
+	private static final class Totals {
+		private long count;
+		private long wallNanos;
+		private long cpuNanos;
+		private long allocatedBytes;
+	}
+}
@@ -0,0 +1,195 @@
+package ca.rk.mappalinguarum.util.geometry;
+
+/**
+ * Douglas-Peucker simplification of closed rings
+ *
+ * vertices flagged as locked always survive, and the ring is simplified independently between
+ * consecutive locked vertices; a border shared by two rings is locked at both of its ends,
+ * so both neighbours reduce it to the same vertices and no gap opens up between them
+ *
+ * @author RK
+ *
+ */
+public class DouglasPeucker {
+
+	/**
+	 * no instantiation, this is a static utility class
+	 */
+	private DouglasPeucker() {
+	}
+
+	/**
+	 * simplify a closed ring stored in [offset, offset + length) of the input coordinate arrays
+	 *
+	 * @param xs x coordinates
+	 * @param ys y coordinates
+	 * @param offset index of the ring's first vertex
+	 * @param length number of vertices in the ring
+	 * @param locked vertices that must be kept, indexed the same way as xs and ys; may be null
+	 * @param tolerance maximum distance a removed vertex may lie from the simplified ring
+	 * @param keep output flags, indexed relative to offset; must hold at least length elements
+	 * @return number of vertices kept, always at least three for rings of three or more vertices
+	 */
+	public static int simplifyRing(double[] xs, double[] ys, int offset, int length,
+									boolean[] locked, double tolerance, boolean[] keep) {
+		if (length <= 3) {
+			for (int i = 0; i < length; ++i) {
+				keep[i] = true;
+			}
+			return length;
+		}
+		for (int i = 0; i < length; ++i) {
+			keep[i] = locked != null && locked[offset + i];
+		}
+
+		//a ring with no locked vertex is anchored at its first vertex and the vertex farthest from it
+		int firstAnchor = -1;
+		for (int i = 0; i < length; ++i) {
+			if (keep[i]) {
+				firstAnchor = i;
+				break;
+			}
+		}
+		if (firstAnchor < 0) {
+			firstAnchor = 0;
+			keep[0] = true;
+			keep[farthestFrom(xs, ys, offset, length, 0)] = true;
+		}
+
+		//walk the ring once, simplifying every run between two consecutive anchors
+		int start = firstAnchor;
+		int[] stack = new int[64];
+		do {
+			int end = (start + 1) % length;
+			while (!keep[end]) {
+				end = (end + 1) % length;
+			}
+			stack = simplifyRun(xs, ys, offset, length, start, end, tolerance, keep, stack);
+			start = end;
+		} while (start != firstAnchor);
+
+		int kept = 0;
+		for (int i = 0; i < length; ++i) {
+			if (keep[i]) {
+				++kept;
+			}
+		}
+		//a closed ring needs three vertices to have any area; add whichever vertex lies farthest from those kept
+		while (kept < 3) {
+			double maxDistance = -1;
+			int farthest = -1;
+			for (int i = 0; i < length; ++i) {
+				if (keep[i]) {
+					continue;
+				}
+				double distance = 0;
+				for (int j = 0; j < length; ++j) {
+					if (keep[j]) {
+						double dx = xs[offset + i] - xs[offset + j];
+						double dy = ys[offset + i] - ys[offset + j];
+						distance += dx * dx + dy * dy;
+					}
+				}
+				if (distance > maxDistance) {
+					maxDistance = distance;
+					farthest = i;
+				}
+			}
+			keep[farthest] = true;
+			++kept;
+		}
+
+		return kept;
+	}
+
+	/**
+	 * iterative Douglas-Peucker between two anchors of a ring, wrapping around the end of the ring
+	 * if end comes before start; uses an explicit stack so long borders cannot overflow the call stack
+	 *
+	 * @return the stack, possibly grown, for reuse
+	 */
+	private static int[] simplifyRun(double[] xs, double[] ys, int offset, int length, int start, int end,
+									double tolerance, boolean[] keep, int[] stack) {
+		//positions are unwrapped so that start < end, and mapped back into the ring with a modulo
+		final int unwrappedEnd = end > start ? end : end + length;
+		if (unwrappedEnd - start < 2) {
+			return stack;
+		}
+
+		int top = 0;
+		stack[top++] = start;
+		stack[top++] = unwrappedEnd;
+		while (top > 0) {
+			final int b = stack[--top];
+			final int a = stack[--top];
+			if (b - a < 2) {
+				continue;
+			}
+			final int ia = offset + a % length;
+			final int ib = offset + b % length;
+			double maxDistance = -1;
+			int farthest = -1;
+			for (int i = a + 1; i < b; ++i) {
+				final int index = offset + i % length;
+				double distance = segmentDistanceSquared(xs[index], ys[index], xs[ia], ys[ia], xs[ib], ys[ib]);
+				if (distance > maxDistance) {
+					maxDistance = distance;
+					farthest = i;
+				}
+			}
+			if (maxDistance > tolerance * tolerance) {
+				keep[farthest % length] = true;
+				if (top + 4 > stack.length) {
+					int[] grown = new int[stack.length * 2];
+					System.arraycopy(stack, 0, grown, 0, top);
+					stack = grown;
+				}
+				stack[top++] = a;
+				stack[top++] = farthest;
+				stack[top++] = farthest;
+				stack[top++] = b;
+			}
+		}
+
+		return stack;
+	}
+
+	/**
+	 * @return position, relative to offset, of the vertex farthest from the input vertex
+	 */
+	private static int farthestFrom(double[] xs, double[] ys, int offset, int length, int from) {
+		final double x = xs[offset + from];
+		final double y = ys[offset + from];
+		double maxDistance = -1;
+		int farthest = from;
+		for (int i = 0; i < length; ++i) {
+			double dx = xs[offset + i] - x;
+			double dy = ys[offset + i] - y;
+			double distance = dx * dx + dy * dy;
+			if (distance > maxDistance) {
+				maxDistance = distance;
+				farthest = i;
+			}
+		}
+
+		return farthest;
+	}
+
+	/**
+	 * squared distance from point (px, py) to the segment from (ax, ay) to (bx, by)
+	 */
+	private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax;
+		double dy = by - ay;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = 0;
+		if (lengthSquared > 0) {
+			t = ( (px - ax) * dx + (py - ay) * dy ) / lengthSquared;
+			t = Math.max(0, Math.min(1, t));
+		}
+		double ex = px - (ax + t * dx);
+		double ey = py - (ay + t * dy);
+
+		return ex * ex + ey * ey;
+	}
+}
@@ -0,0 +1,60 @@
+package ca.rk.mappalinguarum.util.geometry;
+
+import java.awt.Polygon;
+
+/**
+ * the rings of one shape projected into world pixels at one zoom level, with the bounds of each ring
+ *
+ * instances are never modified once constructed, so they can be handed to rendering threads
+ * while the event thread goes on to project the next zoom level into a new instance
+ *
+ * @author RK
+ *
+ */
+public class ProjectedRings {
+
+	private final Polygon[] rings;
+	private final int[] minX;
+	private final int[] maxX;
+	private final int[] minY;
+	private final int[] maxY;
+
+	/**
+	 * constructs ProjectedRings around the input polygons, which must not be modified afterwards
+	 *
+	 * @param r one polygon per ring, in world-pixel coordinates
+	 */
+	public ProjectedRings(Polygon[] r) {
+		rings = r;
+		minX = new int[rings.length];
+		maxX = new int[rings.length];
+		minY = new int[rings.length];
+		maxY = new int[rings.length];
+		for (int i = 0; i < rings.length; ++i) {
+			Polygon poly = rings[i];
+			minX[i] = Integer.MAX_VALUE;
+			maxX[i] = Integer.MIN_VALUE;
+			minY[i] = Integer.MAX_VALUE;
+			maxY[i] = Integer.MIN_VALUE;
+			for (int j = 0; j < poly.npoints; ++j) {
+				minX[i] = Math.min(minX[i], poly.xpoints[j]);
+				maxX[i] = Math.max(maxX[i], poly.xpoints[j]);
+				minY[i] = Math.min(minY[i], poly.ypoints[j]);
+				maxY[i] = Math.max(maxY[i], poly.ypoints[j]);
+			}
+			//Polygon computes its bounds lazily on first use; do it now, before other threads can see it
+			poly.getBounds();
+		}
+	}
+
+	//accessors
+	public int getRingCount() { return rings.length; }
+	/**
+	 * @return the polygon of a ring; callers must not modify it
+	 */
+	public Polygon getRing(int ring) { return rings[ring]; }
+	public int getMinX(int ring) { return minX[ring]; }
+	public int getMaxX(int ring) { return maxX[ring]; }
+	public int getMinY(int ring) { return minY[ring]; }
+	public int getMaxY(int ring) { return maxY[ring]; }
+}
@@ -0,0 +1,152 @@
+package ca.rk.mappalinguarum.util.geometry;
+
+import java.awt.Polygon;
+
+/**
+ * Sutherland-Hodgman clipping of a closed ring against an axis-aligned rectangle
+ *
+ * input vertices are world pixels, which at deep zoom run into the billions once shifted onto the
+ * screen; they are offset in long arithmetic and clipped in double arithmetic, so only the clipped
+ * ring, whose vertices lie within the rectangle, is ever narrowed back to int;
+ * scratch buffers are kept between calls, so an instance is meant to be reused and is not thread-safe
+ *
+ * @author RK
+ *
+ */
+public class RingClipper {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private double[] xsIn;
+	private double[] ysIn;
+	private double[] xsOut;
+	private double[] ysOut;
+	private Polygon clipped;
+
+	/**
+	 * constructs a RingClipper with empty scratch buffers
+	 */
+	public RingClipper() {
+		xsIn = new double[INITIAL_CAPACITY];
+		ysIn = new double[INITIAL_CAPACITY];
+		xsOut = new double[INITIAL_CAPACITY];
+		ysOut = new double[INITIAL_CAPACITY];
+		clipped = new Polygon(new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], 0);
+	}
+
+	/**
+	 * clip the first n vertices of a ring, each shifted by (offsetX, offsetY), to the rectangle
+	 * [left, right] x [top, bottom]; the result is available from getClipped() until the next call
+	 *
+	 * @param xs x coordinates of the ring
+	 * @param ys y coordinates of the ring
+	 * @param n number of vertices in the ring
+	 * @param offsetX added to every x coordinate before clipping
+	 * @param offsetY added to every y coordinate before clipping
+	 * @param left smallest x coordinate kept
+	 * @param top smallest y coordinate kept
+	 * @param right largest x coordinate kept
+	 * @param bottom largest y coordinate kept
+	 * @return number of vertices in the clipped ring, 0 if nothing of the ring lies inside the rectangle
+	 */
+	public int clip(int[] xs, int[] ys, int n, long offsetX, long offsetY,
+					int left, int top, int right, int bottom) {
+		if (xsIn.length < n) {
+			xsIn = new double[Math.max(n, xsIn.length * 2)];
+			ysIn = new double[xsIn.length];
+		}
+		for (int i = 0; i < n; ++i) {
+			xsIn[i] = xs[i] + offsetX;
+			ysIn[i] = ys[i] + offsetY;
+		}
+
+		int count = n;
+		count = clipEdge(count, left, true, false);
+		count = clipEdge(count, right, true, true);
+		count = clipEdge(count, top, false, false);
+		count = clipEdge(count, bottom, false, true);
+
+		if (clipped.xpoints.length < count) {
+			clipped.xpoints = new int[Math.max(count, clipped.xpoints.length * 2)];
+			clipped.ypoints = new int[clipped.xpoints.length];
+		}
+		for (int i = 0; i < count; ++i) {
+			clipped.xpoints[i] = (int) Math.round(xsIn[i]);
+			clipped.ypoints[i] = (int) Math.round(ysIn[i]);
+		}
+		clipped.npoints = count < 3 ? 0 : count;
+		clipped.invalidate();
+
+		return clipped.npoints;
+	}
+
+	/**
+	 * one Sutherland-Hodgman pass against a single edge; reads xsIn/ysIn, writes xsOut/ysOut and
+	 * swaps the two so the result is always in xsIn/ysIn afterwards
+	 *
+	 * @param vertical if true, the edge is the line x = bound, otherwise y = bound
+	 * @param keepBelow if true, points with coordinate <= bound are inside, otherwise points >= bound are
+	 * @return number of vertices after this pass
+	 */
+	private int clipEdge(int count, double bound, boolean vertical, boolean keepBelow) {
+		if (count == 0) {
+			return 0;
+		}
+		//every input edge emits at most two vertices, a crossing and its end point
+		if (xsOut.length < 2 * count) {
+			xsOut = new double[Math.max(2 * count, xsOut.length * 2)];
+			ysOut = new double[xsOut.length];
+		}
+		int out = 0;
+		double prevX = xsIn[count - 1];
+		double prevY = ysIn[count - 1];
+		boolean prevInside = isInside(vertical ? prevX : prevY, bound, keepBelow);
+		for (int i = 0; i < count; ++i) {
+			final double x = xsIn[i];
+			final double y = ysIn[i];
+			final boolean inside = isInside(vertical ? x : y, bound, keepBelow);
+			if (inside != prevInside) {
+				//the edge from the previous vertex crosses the bound; emit the crossing point
+				if (vertical) {
+					final double t = (bound - prevX) / (x - prevX);
+					xsOut[out] = bound;
+					ysOut[out] = prevY + t * (y - prevY);
+				}
+				else {
+					final double t = (bound - prevY) / (y - prevY);
+					xsOut[out] = prevX + t * (x - prevX);
+					ysOut[out] = bound;
+				}
+				++out;
+			}
+			if (inside) {
+				xsOut[out] = x;
+				ysOut[out] = y;
+				++out;
+			}
+			prevX = x;
+			prevY = y;
+			prevInside = inside;
+		}
+
+		double[] swap = xsIn;
+		xsIn = xsOut;
+		xsOut = swap;
+		swap = ysIn;
+		ysIn = ysOut;
+		ysOut = swap;
+
+		return out;
+	}
+
+	private static boolean isInside(double value, double bound, boolean keepBelow) {
+		return keepBelow ? value <= bound : value >= bound;
+	}
+
+	//accessors
+	/**
+	 * @return the ring produced by the last call to clip(), in the same coordinates as the clip rectangle;
+	 * overwritten by the next call
+	 */
+	public Polygon getClipped() { return clipped; }
+}
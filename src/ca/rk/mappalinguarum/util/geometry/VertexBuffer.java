@@ -0,0 +1,477 @@
+package ca.rk.mappalinguarum.util.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * a structure-of-arrays store for every polygon ring on the map
+ *
+ * vertices are kept as Mercator coordinates normalized to the unit square, so that projecting
+ * them into world pixels at any zoom level is a multiplication instead of a log/tan per vertex;
+ * rings are addressed by an index into ringOffsets and ringLengths
+ *
+ * for low zoom levels, a pyramid of simplified copies of every ring can be built once all rings are
+ * added; projecting at such a zoom level then only touches the vertices that are visible at that scale;
+ * the pyramid can be simplified on another thread, as long as no ring is added meanwhile, and then
+ * installed on the thread that uses the buffer
+ *
+ * rings may be added while the buffer is in use: until the pyramid is built, the next projection at the
+ * same zoom level only projects the rings added since, leaving the rest of the projection as it was
+ *
+ * @author RK
+ *
+ */
+public class VertexBuffer {
+
+	public static final double MIN_LATITUDE = -85.05112877980659;
+	public static final double MAX_LATITUDE = -MIN_LATITUDE;
+	private static final int INITIAL_VERTEX_CAPACITY = 1024;
+	private static final int INITIAL_RING_CAPACITY = 64;
+	/**
+	 * below this many vertices a parallel pass costs more than it saves
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 14;
+	private static final int CHUNK_SIZE = 1 << 12;
+	/**
+	 * how far, in pixels at a level's zoom, a simplified ring may deviate from the original
+	 */
+	private static final double LOD_TOLERANCE_PIXELS = 0.5;
+	/**
+	 * stop adding pyramid levels once a level keeps this fraction of all vertices
+	 */
+	private static final double LOD_MAX_KEPT_FRACTION = 0.9;
+	private static final int MAX_LEVELS = 23;
+
+	private double[] mercX;
+	private double[] mercY;
+	private int[] ringOffsets;
+	private int[] ringLengths;
+	private int vertexCount;
+	private int ringCount;
+
+	/**
+	 * pyramid of simplified rings; level z holds, in ring order, the indices of the vertices kept
+	 * at zoom level z, and zoom levels beyond the last level are drawn at full resolution
+	 */
+	private int[][] levelIndices;
+	private int[][] levelRingOffsets;
+	private int[][] levelRingLengths;
+	private int levelTileSize;
+
+	private int[] projectedX;
+	private int[] projectedY;
+	private int[] projectedRingOffsets;
+	private int[] projectedRingLengths;
+	private int projectedZoom = -1;
+	private int projectedDetailZoom = -1;
+	private int projectedTileSize;
+	/**
+	 * number of rings the current projection covers
+	 */
+	private int projectedRingCount;
+	/**
+	 * incremented every time the buffer is reprojected, so that readers can tell stale copies apart
+	 */
+	private int projectionId = 0;
+
+	/**
+	 * constructs an empty VertexBuffer
+	 */
+	public VertexBuffer() {
+		mercX = new double[INITIAL_VERTEX_CAPACITY];
+		mercY = new double[INITIAL_VERTEX_CAPACITY];
+		ringOffsets = new int[INITIAL_RING_CAPACITY];
+		ringLengths = new int[INITIAL_RING_CAPACITY];
+		projectedX = new int[0];
+		projectedY = new int[0];
+		levelIndices = new int[0][];
+	}
+
+	/**
+	 * append a ring of vertices, converting them to normalized Mercator coordinates
+	 *
+	 * @param longitudes array of double representing longitudes
+	 * @param latitudes array of double representing latitudes, same length as longitudes
+	 * @return the index of the new ring
+	 */
+	public int addRing(double[] longitudes, double[] latitudes) {
+		assert(longitudes.length == latitudes.length);
+		final int length = longitudes.length;
+		ensureVertexCapacity(vertexCount + length);
+		if (ringCount == ringOffsets.length) {
+			ringOffsets = Arrays.copyOf(ringOffsets, ringCount * 2);
+			ringLengths = Arrays.copyOf(ringLengths, ringCount * 2);
+		}
+
+		for (int i = 0; i < length; ++i) {
+			mercX[vertexCount + i] = longitudeToX(longitudes[i]);
+			mercY[vertexCount + i] = latitudeToY(latitudes[i]);
+		}
+		ringOffsets[ringCount] = vertexCount;
+		ringLengths[ringCount] = length;
+		vertexCount += length;
+		//the pyramid doesn't cover the new ring, and neither does anything projected from it; a projection
+		//at full resolution is still good for the rings before, and is extended by the next project
+		if (levelIndices.length > 0) {
+			levelIndices = new int[0][];
+			projectedZoom = -1;
+		}
+
+		return ringCount++;
+	}
+
+	/**
+	 * grow the vertex arrays to hold at least the input number of vertices
+	 *
+	 * @param capacity required capacity
+	 */
+	private void ensureVertexCapacity(int capacity) {
+		if (capacity <= mercX.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, mercX.length * 2);
+		mercX = Arrays.copyOf(mercX, newCapacity);
+		mercY = Arrays.copyOf(mercY, newCapacity);
+	}
+
+	/**
+	 * build the level-of-detail pyramid and install it
+	 *
+	 * @param tileSize width of a map tile in pixels
+	 * @see #simplify(int)
+	 */
+	public void buildLevelsOfDetail(int tileSize) {
+		setLevelsOfDetail( simplify(tileSize) );
+	}
+
+	/**
+	 * install a pyramid made by simplify; a pyramid made before the last ring was added is ignored,
+	 * since it doesn't cover every ring
+	 *
+	 * @param lod the pyramid to project low zoom levels from
+	 * @return true if the pyramid was installed
+	 */
+	public boolean setLevelsOfDetail(LevelsOfDetail lod) {
+		if (lod.ringCount != ringCount) {
+			return false;
+		}
+		levelIndices = lod.indices;
+		levelRingOffsets = lod.ringOffsets;
+		levelRingLengths = lod.ringLengths;
+		levelTileSize = lod.tileSize;
+		projectedZoom = -1;
+		return true;
+	}
+
+	/**
+	 * make the level-of-detail pyramid with Douglas-Peucker, one level per zoom level starting at 0,
+	 * each simplified to within LOD_TOLERANCE_PIXELS at its zoom level, without installing it;
+	 * vertices shared by more than one ring are never removed, so that neighbouring areas are
+	 * simplified identically along their common border
+	 *
+	 * this only reads the rings, so it may run on any thread while no ring is added
+	 *
+	 * @param tileSize width of a map tile in pixels
+	 * @return the pyramid, for setLevelsOfDetail
+	 */
+	public LevelsOfDetail simplify(int tileSize) {
+		boolean[] locked = findSharedVertices();
+		boolean[] keep = new boolean[maxRingLength()];
+		List<int[]> indices = new ArrayList<int[]>();
+		List<int[]> offsets = new ArrayList<int[]>();
+		List<int[]> lengths = new ArrayList<int[]>();
+		int[] kept = new int[vertexCount];
+
+		for (int zoom = 0; zoom < MAX_LEVELS; ++zoom) {
+			final double tolerance = LOD_TOLERANCE_PIXELS / ( (double) tileSize * (1L << zoom) );
+			int[] levelOffsets = new int[ringCount];
+			int[] levelLengths = new int[ringCount];
+			int count = 0;
+			for (int ring = 0; ring < ringCount; ++ring) {
+				final int offset = ringOffsets[ring];
+				final int length = ringLengths[ring];
+				int ringKept = DouglasPeucker.simplifyRing(mercX, mercY, offset, length, locked, tolerance, keep);
+				levelOffsets[ring] = count;
+				levelLengths[ring] = ringKept;
+				for (int i = 0; i < length; ++i) {
+					if (keep[i]) {
+						kept[count++] = offset + i;
+					}
+				}
+			}
+			if (count > vertexCount * LOD_MAX_KEPT_FRACTION) {
+				break;
+			}
+			indices.add( Arrays.copyOf(kept, count) );
+			offsets.add(levelOffsets);
+			lengths.add(levelLengths);
+		}
+
+		return new LevelsOfDetail(indices.toArray(new int[indices.size()][]), offsets.toArray(new int[offsets.size()][]),
+				lengths.toArray(new int[lengths.size()][]), tileSize, ringCount);
+	}
+
+	/**
+	 * find the vertices where a border shared between rings begins or ends; vertices in the middle
+	 * of a shared border are left unlocked, since every ring along that border sees the same run of
+	 * vertices between the same two locked ends and simplifies it the same way
+	 *
+	 * @return flags marking every junction vertex
+	 */
+	private boolean[] findSharedVertices() {
+		//maps a coordinate pair to {number of rings it occurs in, signature of those rings}
+		HashMap<Long, long[]> rings = new HashMap<Long, long[]>(vertexCount * 2);
+		for (int ring = 0; ring < ringCount; ++ring) {
+			for (int i = ringOffsets[ring]; i < ringOffsets[ring] + ringLengths[ring]; ++i) {
+				Long key = coordinateKey(i);
+				long[] entry = rings.get(key);
+				if (entry == null) {
+					rings.put(key, new long[] { 1, ring + 1, ring });
+				}
+				else if (entry[2] != ring) {
+					++entry[0];
+					entry[1] = entry[1] * 31 + ring + 1;
+					entry[2] = ring;
+				}
+			}
+		}
+
+		boolean[] locked = new boolean[vertexCount];
+		long[] signatures = new long[vertexCount];
+		for (int i = 0; i < vertexCount; ++i) {
+			long[] entry = rings.get( coordinateKey(i) );
+			//unshared vertices all get the same signature
+			signatures[i] = entry[0] > 1 ? entry[1] : 0;
+		}
+		for (int ring = 0; ring < ringCount; ++ring) {
+			final int offset = ringOffsets[ring];
+			final int length = ringLengths[ring];
+			for (int i = 0; i < length; ++i) {
+				final long signature = signatures[offset + i];
+				if (signature == 0) {
+					continue;
+				}
+				final long previous = signatures[offset + (i + length - 1) % length];
+				final long next = signatures[offset + (i + 1) % length];
+				locked[offset + i] = previous != signature || next != signature;
+			}
+		}
+		return locked;
+	}
+
+	/**
+	 * @return a hash key that is equal for vertices with bitwise identical coordinates
+	 */
+	private Long coordinateKey(int vertex) {
+		long x = Double.doubleToLongBits(mercX[vertex]);
+		long y = Double.doubleToLongBits(mercY[vertex]);
+		return x * 0x9E3779B97F4A7C15L ^ y;
+	}
+
+	/**
+	 * @return number of vertices in the longest ring
+	 */
+	private int maxRingLength() {
+		int max = 0;
+		for (int ring = 0; ring < ringCount; ++ring) {
+			max = Math.max(max, ringLengths[ring]);
+		}
+		return max;
+	}
+
+	/**
+	 * project every vertex in the buffer into world-pixel coordinates at the input zoom level;
+	 * does nothing if the buffer is already projected at that zoom level;
+	 * if the level-of-detail pyramid has a level for this zoom, only that level's vertices are projected;
+	 * large buffers are split into chunks and projected across all available cores
+	 *
+	 * @param zoom slippy map zoom level
+	 * @param tileSize width of a map tile in pixels
+	 */
+	public void project(int zoom, int tileSize) {
+		project(zoom, tileSize, zoom);
+	}
+
+	/**
+	 * project every vertex in the buffer into world-pixel coordinates at the input zoom level, using
+	 * the vertices that the level-of-detail pyramid keeps at a possibly lower zoom level, so that
+	 * a coarser outline can be drawn quickly while the map is moving;
+	 * if the buffer is already projected at that zoom and detail level, only rings added since are projected
+	 *
+	 * @param zoom slippy map zoom level
+	 * @param tileSize width of a map tile in pixels
+	 * @param detailZoom zoom level whose simplified rings to project, at most zoom
+	 */
+	public void project(int zoom, int tileSize, int detailZoom) {
+		detailZoom = Math.max(0, Math.min(zoom, detailZoom));
+		if (zoom == projectedZoom && detailZoom == projectedDetailZoom && tileSize == projectedTileSize) {
+			if (projectedRingCount < ringCount) {
+				projectAdded(tileSize << zoom);
+			}
+			return;
+		}
+		final int[] indices;
+		if (detailZoom < levelIndices.length && tileSize == levelTileSize) {
+			indices = levelIndices[detailZoom];
+			projectedRingOffsets = levelRingOffsets[detailZoom];
+			projectedRingLengths = levelRingLengths[detailZoom];
+		}
+		else {
+			indices = null;
+			projectedRingOffsets = ringOffsets;
+			projectedRingLengths = ringLengths;
+		}
+		final int count = indices == null ? vertexCount : indices.length;
+		if (projectedX.length < count) {
+			projectedX = new int[mercX.length];
+			projectedY = new int[mercY.length];
+		}
+
+		projectVertices(0, count, indices, tileSize << zoom);
+
+		projectedZoom = zoom;
+		projectedDetailZoom = detailZoom;
+		projectedTileSize = tileSize;
+		projectedRingCount = ringCount;
+		++projectionId;
+	}
+
+	/**
+	 * project the rings added since the last projection, which was at full resolution since there is
+	 * no pyramid; rings projected before keep their coordinates, so the projection id is unchanged
+	 *
+	 * @param mapSize width of the world in pixels at the projected zoom level
+	 */
+	private void projectAdded(int mapSize) {
+		if (projectedX.length < vertexCount) {
+			projectedX = Arrays.copyOf(projectedX, mercX.length);
+			projectedY = Arrays.copyOf(projectedY, mercY.length);
+		}
+		projectedRingOffsets = ringOffsets;
+		projectedRingLengths = ringLengths;
+		projectVertices(ringOffsets[projectedRingCount], vertexCount, null, mapSize);
+		projectedRingCount = ringCount;
+	}
+
+	/**
+	 * project the vertices in [from, to), splitting large ranges into chunks projected across all available cores
+	 *
+	 * @param indices vertex indices of a pyramid level, or null to project the full-resolution vertices
+	 */
+	private void projectVertices(int from, int to, int[] indices, int mapSize) {
+		if (to - from < PARALLEL_THRESHOLD) {
+			projectRange(from, to, indices, mapSize);
+		}
+		else {
+			final int chunks = (to - from + CHUNK_SIZE - 1) / CHUNK_SIZE;
+			IntStream.range(0, chunks).parallel().forEach(chunk -> {
+				final int start = from + chunk * CHUNK_SIZE;
+				projectRange(start, Math.min(start + CHUNK_SIZE, to), indices, mapSize);
+			});
+		}
+	}
+
+	/**
+	 * scale normalized coordinates in [from, to) to world pixels, clamped to the map the same way
+	 * OsmMercator clamps them
+	 *
+	 * @param indices vertex indices of a pyramid level, or null to project the full-resolution vertices
+	 */
+	private void projectRange(int from, int to, int[] indices, int mapSize) {
+		final double scale = mapSize;
+		final int max = mapSize - 1;
+		final double[] xs = mercX;
+		final double[] ys = mercY;
+		final int[] outX = projectedX;
+		final int[] outY = projectedY;
+		if (indices == null) {
+			for (int i = from; i < to; ++i) {
+				outX[i] = Math.min( (int) (xs[i] * scale), max);
+				outY[i] = Math.min( (int) (ys[i] * scale), max);
+			}
+		}
+		else {
+			for (int i = from; i < to; ++i) {
+				final int index = indices[i];
+				outX[i] = Math.min( (int) (xs[index] * scale), max);
+				outY[i] = Math.min( (int) (ys[index] * scale), max);
+			}
+		}
+	}
+
+	/**
+	 * @param longitude longitude in degrees
+	 * @return x coordinate normalized to 0-1
+	 */
+	public static double longitudeToX(double longitude) {
+		return (longitude + 180.0) / 360.0;
+	}
+
+	/**
+	 * @param latitude latitude in degrees, clamped to the limits of the Mercator projection
+	 * @return y coordinate normalized to 0-1, north to south
+	 */
+	public static double latitudeToY(double latitude) {
+		double lat = Math.max(MIN_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+		double sinLat = Math.sin(Math.toRadians(lat));
+		return 0.5 - Math.log( (1.0 + sinLat) / (1.0 - sinLat) ) / (4.0 * Math.PI);
+	}
+
+	//accessors
+	public int getVertexCount() { return vertexCount; }
+	public int getRingCount() { return ringCount; }
+	public int getRingOffset(int ring) { return ringOffsets[ring]; }
+	public int getRingLength(int ring) { return ringLengths[ring]; }
+	public double[] getMercatorX() { return mercX; }
+	public double[] getMercatorY() { return mercY; }
+	/**
+	 * @return projected x coordinates; rings are located with getProjectedRingOffset
+	 */
+	public int[] getProjectedX() { return projectedX; }
+	/**
+	 * @return projected y coordinates; rings are located with getProjectedRingOffset
+	 */
+	public int[] getProjectedY() { return projectedY; }
+	/**
+	 * @return offset of a ring into the projected arrays, which differs from getRingOffset if a
+	 * simplified level was projected
+	 */
+	public int getProjectedRingOffset(int ring) { return projectedRingOffsets[ring]; }
+	/**
+	 * @return number of projected vertices in a ring at the current zoom level
+	 */
+	public int getProjectedRingLength(int ring) { return projectedRingLengths[ring]; }
+	/**
+	 * @return number of zoom levels, starting at 0, with a simplified level of detail
+	 */
+	public int getLevelCount() { return levelIndices.length; }
+	/**
+	 * @return number of vertices kept at a level of detail
+	 */
+	public int getLevelVertexCount(int level) { return levelIndices[level].length; }
+	public int getProjectedZoom() { return projectedZoom; }
+	public int getProjectedDetailZoom() { return projectedDetailZoom; }
+	public int getProjectionId() { return projectionId; }
+
+	/**
+	 * a level-of-detail pyramid, as made by simplify
+	 */
+	public static final class LevelsOfDetail {
+		private final int[][] indices;
+		private final int[][] ringOffsets;
+		private final int[][] ringLengths;
+		private final int tileSize;
+		private final int ringCount;
+
+		private LevelsOfDetail(int[][] indices, int[][] ringOffsets, int[][] ringLengths, int tileSize, int ringCount) {
+			this.indices = indices;
+			this.ringOffsets = ringOffsets;
+			this.ringLengths = ringLengths;
+			this.tileSize = tileSize;
+			this.ringCount = ringCount;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package ca.rk.mappalinguarum.util.geometry.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.rk.mappalinguarum.util.geometry.DouglasPeucker;
+
+
+/**
+ * test class for DouglasPeucker class
+ *
+ * @author RK
+ *
+ */
+
+public class DouglasPeuckerTest {
+
+	/**
+	 * a square with extra vertices along its edges, all of which lie exactly on the edges
+	 */
+	double[] xs = { 0, 1, 2, 3, 4, 4, 4, 4, 4, 3, 2, 1, 0, 0, 0, 0 };
+	double[] ys = { 0, 0, 0, 0, 0, 1, 2, 3, 4, 4, 4, 4, 4, 3, 2, 1 };
+
+	/**
+	 * test that collinear vertices are removed and corners are kept
+	 */
+	@Test
+	public void testSimplifySquare() {
+		boolean[] keep = new boolean[xs.length];
+		int kept = DouglasPeucker.simplifyRing(xs, ys, 0, xs.length, null, 0.1, keep);
+
+		assertEquals(4, kept);
+		assertTrue(keep[0]);
+		assertTrue(keep[4]);
+		assertTrue(keep[8]);
+		assertTrue(keep[12]);
+	}
+
+	/**
+	 * test that locked vertices survive simplification
+	 */
+	@Test
+	public void testLockedVertices() {
+		boolean[] locked = new boolean[xs.length];
+		locked[2] = true;
+		locked[14] = true;
+		boolean[] keep = new boolean[xs.length];
+		int kept = DouglasPeucker.simplifyRing(xs, ys, 0, xs.length, locked, 0.1, keep);
+
+		assertEquals(6, kept);
+		assertTrue(keep[2]);
+		assertTrue(keep[14]);
+	}
+
+	/**
+	 * test that a ring never collapses below three vertices, even with a huge tolerance
+	 */
+	@Test
+	public void testMinimumVertices() {
+		boolean[] keep = new boolean[xs.length];
+		int kept = DouglasPeucker.simplifyRing(xs, ys, 0, xs.length, null, 100, keep);
+
+		assertEquals(3, kept);
+	}
+
+	/**
+	 * test simplifying a ring stored at an offset in larger arrays
+	 */
+	@Test
+	public void testOffset() {
+		double[] paddedXs = new double[xs.length + 3];
+		double[] paddedYs = new double[ys.length + 3];
+		System.arraycopy(xs, 0, paddedXs, 3, xs.length);
+		System.arraycopy(ys, 0, paddedYs, 3, ys.length);
+		boolean[] keep = new boolean[xs.length];
+		int kept = DouglasPeucker.simplifyRing(paddedXs, paddedYs, 3, xs.length, null, 0.1, keep);
+
+		assertEquals(4, kept);
+		assertTrue(keep[8]);
+	}
+}
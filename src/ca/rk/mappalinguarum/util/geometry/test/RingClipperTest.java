@@ -0,0 +1,84 @@
+package ca.rk.mappalinguarum.util.geometry.test;
+
+import static org.junit.Assert.*;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.rk.mappalinguarum.util.geometry.RingClipper;
+
+
+/**
+ * test class for RingClipper class
+ *
+ * @author RK
+ *
+ */
+
+public class RingClipperTest {
+
+	RingClipper clipper;
+
+	/**
+	 * instantiate a RingClipper
+	 */
+	@Before
+	public void testRingClipper() {
+		clipper = new RingClipper();
+	}
+
+	/**
+	 * test that a ring inside the rectangle comes out unchanged, apart from the offset
+	 */
+	@Test
+	public void testInside() {
+		int[] xs = {10, 20, 20, 10};
+		int[] ys = {10, 10, 20, 20};
+		assertEquals(4, clipper.clip(xs, ys, 4, 5, -5, 0, 0, 100, 100));
+		Polygon clipped = clipper.getClipped();
+		assertEquals(15, clipped.xpoints[0]);
+		assertEquals(5, clipped.ypoints[0]);
+		assertEquals(25, clipped.xpoints[2]);
+		assertEquals(15, clipped.ypoints[2]);
+	}
+
+	/**
+	 * test that a ring enclosing the rectangle is clipped to the rectangle itself
+	 */
+	@Test
+	public void testEnclosing() {
+		int[] xs = {-1000, 1000, 1000, -1000};
+		int[] ys = {-1000, -1000, 1000, 1000};
+		assertEquals(4, clipper.clip(xs, ys, 4, 0, 0, 0, 0, 100, 50));
+		assertEquals(new Rectangle(0, 0, 100, 50), clipper.getClipped().getBounds());
+	}
+
+	/**
+	 * test that a ring entirely outside the rectangle produces nothing
+	 */
+	@Test
+	public void testOutside() {
+		int[] xs = {200, 300, 250};
+		int[] ys = {0, 0, 50};
+		assertEquals(0, clipper.clip(xs, ys, 3, 0, 0, 0, 0, 100, 100));
+	}
+
+	/**
+	 * test that a triangle crossing one edge gains a vertex, and that deep-zoom world coordinates
+	 * shifted back onto the screen by a large offset clip correctly
+	 */
+	@Test
+	public void testPartialAndLargeOffset() {
+		final int far = 1 << 30;
+		int[] xs = {far + 50, far + 150, far + 50};
+		int[] ys = {0, 50, 100};
+		assertEquals(4, clipper.clip(xs, ys, 3, -(long) far, 0, 0, 0, 100, 100));
+		Polygon clipped = clipper.getClipped();
+		assertEquals(new Rectangle(50, 0, 50, 100), clipped.getBounds());
+		assertTrue(clipped.contains(75, 50));
+		assertFalse(clipped.contains(75, 5));
+	}
+}
@@ -0,0 +1,159 @@
+package ca.rk.mappalinguarum.util.geometry.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openstreetmap.gui.jmapviewer.OsmMercator;
+
+import ca.rk.mappalinguarum.util.geometry.VertexBuffer;
+
+
+/**
+ * test class for VertexBuffer class
+ *
+ * @author RK
+ *
+ */
+
+public class VertexBufferTest {
+
+	private final int TILE_SIZE = 256;
+
+	VertexBuffer buffer;
+	double[] lons = { -130.5, -120.25, -125.0, 179.9, -179.9 };
+	double[] lats = { 54.0, 49.5, 60.75, -85.1, 85.1 };
+
+	/**
+	 * instantiate a VertexBuffer with two rings
+	 */
+	@Before
+	public void testVertexBuffer() {
+		buffer = new VertexBuffer();
+		buffer.addRing(new double[] {0, 1, 2}, new double[] {0, 1, 0});
+		buffer.addRing(lons, lats);
+	}
+
+	/**
+	 * test whether rings are laid out one after another
+	 */
+	@Test
+	public void testRings() {
+		assertEquals(2, buffer.getRingCount());
+		assertEquals(3 + lons.length, buffer.getVertexCount());
+		assertEquals(0, buffer.getRingOffset(0));
+		assertEquals(3, buffer.getRingOffset(1));
+		assertEquals(lons.length, buffer.getRingLength(1));
+	}
+
+	/**
+	 * test that bulk projection lands on the same pixels as JMapViewer's own projection
+	 */
+	@Test
+	public void testProject() {
+		for (int zoom = 0; zoom <= 18; ++zoom) {
+			buffer.project(zoom, TILE_SIZE);
+			int offset = buffer.getRingOffset(1);
+			for (int i = 0; i < lons.length; ++i) {
+				assertEquals(OsmMercator.LonToX(lons[i], zoom), buffer.getProjectedX()[offset + i], 1);
+				assertEquals(OsmMercator.LatToY(lats[i], zoom), buffer.getProjectedY()[offset + i], 1);
+			}
+		}
+	}
+
+	/**
+	 * test that projecting at the same zoom twice is a no-op, and a ring added before the pyramid is built
+	 * is projected on its own, without changing the projection of the others
+	 */
+	@Test
+	public void testProjectionId() {
+		buffer.project(4, TILE_SIZE);
+		int id = buffer.getProjectionId();
+		buffer.project(4, TILE_SIZE);
+		assertEquals(id, buffer.getProjectionId());
+
+		int first = buffer.getProjectedX()[0];
+		buffer.addRing(new double[] {10, 11, 12}, new double[] {10, 11, 10});
+		assertEquals(4, buffer.getProjectedZoom());
+		buffer.project(4, TILE_SIZE);
+		assertEquals(id, buffer.getProjectionId());
+		assertEquals(first, buffer.getProjectedX()[0]);
+		assertEquals(OsmMercator.LonToX(11, 4), buffer.getProjectedX()[buffer.getProjectedRingOffset(2) + 1], 1);
+	}
+
+	/**
+	 * test that adding a ring once the pyramid is built drops the pyramid and the projection made from it
+	 */
+	@Test
+	public void testAddAfterLevelsOfDetail() {
+		//a finely divided square, which simplifies to its corners at low zoom levels
+		double[] squareLons = new double[400];
+		double[] squareLats = new double[400];
+		for (int i = 0; i < 100; ++i) {
+			squareLons[i] = i / 10.0;
+			squareLats[i] = 0;
+			squareLons[100 + i] = 10;
+			squareLats[100 + i] = i / 10.0;
+			squareLons[200 + i] = 10 - i / 10.0;
+			squareLats[200 + i] = 10;
+			squareLons[300 + i] = 0;
+			squareLats[300 + i] = 10 - i / 10.0;
+		}
+		buffer.addRing(squareLons, squareLats);
+		buffer.buildLevelsOfDetail(TILE_SIZE);
+		assertTrue(buffer.getLevelCount() > 0);
+		buffer.project(0, TILE_SIZE);
+		int id = buffer.getProjectionId();
+
+		buffer.addRing(new double[] {10, 11, 12}, new double[] {10, 11, 10});
+		assertEquals(0, buffer.getLevelCount());
+		assertEquals(-1, buffer.getProjectedZoom());
+		buffer.project(0, TILE_SIZE);
+		assertTrue(buffer.getProjectionId() != id);
+		assertEquals(400, buffer.getProjectedRingLength(2));
+		assertEquals(3, buffer.getProjectedRingLength(3));
+	}
+
+	/**
+	 * test that projecting with a coarser level of detail keeps the zoom's scale but fewer vertices,
+	 * and counts as a different projection
+	 */
+	@Test
+	public void testProjectDetailZoom() {
+		final int n = 400;
+		double[] circleLons = new double[n];
+		double[] circleLats = new double[n];
+		for (int i = 0; i < n; ++i) {
+			circleLons[i] = 10 * Math.cos(2 * Math.PI * i / n);
+			circleLats[i] = 10 * Math.sin(2 * Math.PI * i / n);
+		}
+		final int ring = buffer.addRing(circleLons, circleLats);
+		buffer.buildLevelsOfDetail(TILE_SIZE);
+
+		buffer.project(6, TILE_SIZE);
+		final int id = buffer.getProjectionId();
+		final int fullLength = buffer.getProjectedRingLength(ring);
+		buffer.project(6, TILE_SIZE, 2);
+		assertTrue(buffer.getProjectionId() != id);
+		assertEquals(2, buffer.getProjectedDetailZoom());
+		assertTrue(buffer.getProjectedRingLength(ring) < fullLength);
+		final int first = buffer.getProjectedRingOffset(ring);
+		assertEquals(OsmMercator.LonToX(10, 6), buffer.getProjectedX()[first], 1);
+
+		//a detail zoom beyond the zoom itself is the zoom's own level of detail
+		buffer.project(6, TILE_SIZE, 9);
+		assertEquals(6, buffer.getProjectedDetailZoom());
+		assertEquals(fullLength, buffer.getProjectedRingLength(ring));
+	}
+
+	/**
+	 * test that a pyramid simplified before a ring was added isn't installed
+	 */
+	@Test
+	public void testStaleLevelsOfDetail() {
+		VertexBuffer.LevelsOfDetail lod = buffer.simplify(TILE_SIZE);
+		buffer.addRing(new double[] {10, 11, 12}, new double[] {10, 11, 10});
+		assertFalse( buffer.setLevelsOfDetail(lod) );
+		assertTrue( buffer.setLevelsOfDetail( buffer.simplify(TILE_SIZE) ) );
+	}
+}
@@ -0,0 +1,64 @@
+package ca.rk.mappalinguarum.util.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.rk.mappalinguarum.util.PhaseProfiler;
+
+
+/**
+ * test class for PhaseProfiler
+ *
+ * @author RK
+ *
+ */
+
+public class PhaseProfilerTest {
+
+	/**
+	 * test that every run of a phase is added up, and closing a phase twice counts it once
+	 */
+	@Test
+	public void testRuns() throws Exception {
+		PhaseProfiler profiler = new PhaseProfiler();
+		for (int i = 0; i < 3; ++i) {
+			PhaseProfiler.Phase phase = profiler.start("sleep");
+			try {
+				Thread.sleep(5);
+			}
+			finally {
+				phase.close();
+			}
+		}
+		PhaseProfiler.Phase twice = profiler.start("sleep");
+		twice.close();
+		twice.close();
+
+		assertEquals(4, profiler.getCount("sleep"));
+		assertTrue(profiler.getWallNanos("sleep") >= 15000000);
+		assertEquals(0, profiler.getCount("never"));
+	}
+
+	/**
+	 * test that the summary and the JSON list phases in the order they first started
+	 */
+	@Test
+	public void testReport() {
+		PhaseProfiler profiler = new PhaseProfiler();
+		profiler.start("second \"quoted\"").close();
+		profiler.start("first").close();
+		profiler.start("second \"quoted\"").close();
+
+		List<String> summary = profiler.getSummary();
+		assertEquals(3, summary.size());
+		assertTrue(summary.get(1).contains("second \"quoted\"") && summary.get(1).contains("over 2 runs"));
+		assertTrue(summary.get(2).contains("first"));
+
+		String json = profiler.toJSON();
+		assertTrue(json.contains("\"name\": \"second \\\"quoted\\\"\", \"count\": 2"));
+		assertTrue(json.indexOf("second") < json.indexOf("first"));
+	}
+}
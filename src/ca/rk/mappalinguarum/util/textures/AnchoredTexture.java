@@ -0,0 +1,53 @@
+package ca.rk.mappalinguarum.util.textures;
+
+import java.awt.TexturePaint;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * a texture image together with the TexturePaints that tile it from each possible anchor
+ *
+ * a TexturePaint repeats every WIDTH x HEIGHT pixels, so only that many anchors are distinct; each is
+ * created the first time it's asked for and kept, so filling a polygon with a texture allocates nothing
+ * once the map has been drawn for a while; may be used from any thread
+ *
+ * @author RK
+ *
+ */
+public class AnchoredTexture {
+
+	private final BufferedImage image;
+	private final AtomicReferenceArray<TexturePaint> paints;
+
+	/**
+	 * constructs an AnchoredTexture around the input image
+	 *
+	 * @param i the image to tile
+	 */
+	public AnchoredTexture(BufferedImage i) {
+		image = i;
+		paints = new AtomicReferenceArray<TexturePaint>(image.getWidth() * image.getHeight());
+	}
+
+	/**
+	 * @param x any x coordinate the top-left corner of a copy of the image should land on
+	 * @param y any y coordinate the top-left corner of a copy of the image should land on
+	 * @return a TexturePaint tiling the image from (x, y)
+	 */
+	public TexturePaint getPaint(long x, long y) {
+		final int anchorX = (int) Math.floorMod(x, (long) image.getWidth());
+		final int anchorY = (int) Math.floorMod(y, (long) image.getHeight());
+		final int index = anchorY * image.getWidth() + anchorX;
+		TexturePaint paint = paints.get(index);
+		if (paint == null) {
+			//two threads may both create one; either will do
+			paint = new TexturePaint(image, new Rectangle2D.Float(anchorX, anchorY, image.getWidth(), image.getHeight()));
+			paints.set(index, paint);
+		}
+		return paint;
+	}
+
+	//accessors
+	public BufferedImage getImage() { return image; }
+}
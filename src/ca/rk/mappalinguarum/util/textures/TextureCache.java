@@ -0,0 +1,93 @@
+package ca.rk.mappalinguarum.util.textures;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import ca.rk.mappalinguarum.ui.LanguagePolygon;
+import ca.rk.mappalinguarum.util.Colour;
+import ca.rk.mappalinguarum.util.PhaseProfiler;
+
+/**
+ * hands out TexturePatterns by colour pair, generating each one the first time it's asked for,
+ * so that no time is spent on textures until they're drawn, and polygons that share colours
+ * share a texture; when textures are switched on, every pattern the map needs can be generated
+ * at once, spread across all cores
+ *
+ * must only be used from the event thread
+ *
+ * @author RK
+ *
+ */
+public class TextureCache {
+
+	private HashMap<Long, TexturePattern> patterns;
+
+	/**
+	 * constructs an empty TextureCache
+	 */
+	public TextureCache() {
+		patterns = new HashMap<Long, TexturePattern>();
+	}
+
+	/**
+	 * @param background the colour of the pattern in mosaic mode
+	 * @param familyBackground the colour of the pattern in families mode
+	 * @return the TexturePattern for the pair of colours, generated if this is its first use
+	 */
+	public TexturePattern get(Colour background, Colour familyBackground) {
+		final long key = toKey(background, familyBackground);
+		TexturePattern pattern = patterns.get(key);
+		if (pattern == null) {
+			pattern = generate(background, familyBackground);
+			patterns.put(key, pattern);
+		}
+		return pattern;
+	}
+	
+	/**
+	 * generate the patterns of every input LanguagePolygon that aren't cached yet, in parallel,
+	 * returning once they're all done
+	 * 
+	 * @param lps the LanguagePolygons to generate textures for
+	 */
+	public void generateAll(List<LanguagePolygon> lps) {
+		LinkedHashMap<Long, Colour[]> missing = new LinkedHashMap<Long, Colour[]>();
+		for (LanguagePolygon lp : lps) {
+			final long key = toKey( lp.getColour(), lp.getFamilyDerivedColour() );
+			if (!patterns.containsKey(key) ) {
+				missing.put(key, new Colour[] { lp.getColour(), lp.getFamilyDerivedColour() });
+			}
+		}
+		
+		java.util.Map<Long, TexturePattern> generated = missing.entrySet().parallelStream()
+				.collect( Collectors.toMap(java.util.Map.Entry::getKey,
+						entry -> generate( entry.getValue()[0], entry.getValue()[1] )) );
+		patterns.putAll(generated);
+	}
+	
+	/**
+	 * generate a TexturePattern, timed as a run of the "textures" phase; safe to call from any thread
+	 */
+	private TexturePattern generate(Colour background, Colour familyBackground) {
+		PhaseProfiler.Phase phase = PhaseProfiler.getInstance().start("textures");
+		try {
+			return new TexturePattern(background, familyBackground);
+		}
+		finally {
+			phase.close();
+		}
+	}
+	
+	/**
+	 * @return the two colours packed into one long
+	 */
+	private static long toKey(Colour background, Colour familyBackground) {
+		return (long) Colour.toInt(background.getRed(), background.getGreen(), background.getBlue()) << 32
+				| Colour.toInt(familyBackground.getRed(), familyBackground.getGreen(), familyBackground.getBlue());
+	}
+
+	//accessors
+	public int getPatternCount() { return patterns.size(); }
+}
@@ -0,0 +1,147 @@
+package ca.rk.mappalinguarum.util.textures;
+
+import java.util.Random;
+
+/**
+ * tileable fractional Brownian motion over a WIDTH x HEIGHT grid of pixels, as used for texture patterns
+ *
+ * the pixels sample the noise at the same few coordinates for every texture, so everything that depends
+ * only on the coordinates (lattice cell, offset within it, and the fade curve at both ends) is worked out
+ * once into tables; what differs between textures is only the permutation that picks gradients, and each
+ * TilingNoise has its own, so that textures can be generated on several threads at once
+ *
+ * some code based on this Stack Exchange thread:
+ * https://gamedev.stackexchange.com/questions/23625/how-do-you-generate-tileable-perlin-noise
+ *
+ * @author RK
+ *
+ */
+public class TilingNoise {
+	public static final int WIDTH = 32;
+	public static final int HEIGHT = 32;
+	private static final int NOISE_PERIOD = 32;
+	private static final double FREQUENCY = 1 / 16.0;
+	private static final int OCTAVES = 3;
+	/**
+	 * the lattice repeats every this many cells at the first octave, twice as often at each one after
+	 */
+	private static final int BASE_PERIOD = (int) (WIDTH * FREQUENCY);
+
+	private static final double[] GRADIENT_X = new double[NOISE_PERIOD];
+	private static final double[] GRADIENT_Y = new double[NOISE_PERIOD];
+	/**
+	 * per octave, then per pixel coordinate: the lattice cell it falls in, its offset from the cell's
+	 * near corner, and the fade curve at its distance from the near and far corners
+	 */
+	private static final int[][] CELLS = new int[OCTAVES][WIDTH];
+	private static final double[][] OFFSETS = new double[OCTAVES][WIDTH];
+	private static final double[][] NEAR_FADES = new double[OCTAVES][WIDTH];
+	private static final double[][] FAR_FADES = new double[OCTAVES][WIDTH];
+
+	static {
+		assert(WIDTH == HEIGHT);
+		for (int i = 0; i < NOISE_PERIOD; ++i) {
+			GRADIENT_X[i] = Math.cos((i + 1) * 2 * Math.PI / NOISE_PERIOD);
+			GRADIENT_Y[i] = Math.sin((i + 1) * 2 * Math.PI / NOISE_PERIOD);
+		}
+		for (int octave = 0; octave < OCTAVES; ++octave) {
+			for (int c = 0; c < WIDTH; ++c) {
+				final double coordinate = c * FREQUENCY * Math.pow(2, octave + 1);
+				CELLS[octave][c] = (int) coordinate;
+				OFFSETS[octave][c] = coordinate - CELLS[octave][c];
+				NEAR_FADES[octave][c] = fade( Math.abs(coordinate - CELLS[octave][c]) );
+				FAR_FADES[octave][c] = fade( Math.abs(coordinate - (CELLS[octave][c] + 1)) );
+			}
+		}
+	}
+
+	private final int[] permutations;
+
+	/**
+	 * constructs a TilingNoise with a permutation shuffled by the input generator
+	 *
+	 * @param rng source of randomness for the permutation
+	 */
+	public TilingNoise(Random rng) {
+		permutations = new int[NOISE_PERIOD];
+		for (int i = 0; i < NOISE_PERIOD; ++i) {
+			permutations[i] = i;
+		}
+		for (int i = NOISE_PERIOD - 1; i > 0; --i) {
+			final int index = rng.nextInt(i + 1);
+			final int temp = permutations[index];
+			permutations[index] = permutations[i];
+			permutations[i] = temp;
+		}
+	}
+
+	/**
+	 * the quintic fade curve, falling from 1 at distance 0 to 0 at distance 1
+	 */
+	private static double fade(double dist) {
+		return 1 - 6 * Math.pow(dist, 5) + 15 * Math.pow(dist, 4) - 10 * Math.pow(dist, 3);
+	}
+
+	/**
+	 * sample the noise at every pixel, a row at a time, summing octaves of halving weight
+	 *
+	 * @return noise in row-major order, y * WIDTH + x
+	 */
+	public double[] generate() {
+		double[] noise = new double[WIDTH * HEIGHT];
+		//per column, the first half of the hash of both corners, which doesn't change from row to row
+		int[] nearHashes = new int[WIDTH];
+		int[] farHashes = new int[WIDTH];
+		for (int octave = 0; octave < OCTAVES; ++octave) {
+			final int period = BASE_PERIOD << (octave + 1);
+			final double weight = Math.pow(0.5, octave + 1);
+			final int[] cells = CELLS[octave];
+			final double[] offsets = OFFSETS[octave];
+			final double[] nearFades = NEAR_FADES[octave];
+			final double[] farFades = FAR_FADES[octave];
+			for (int x = 0; x < WIDTH; ++x) {
+				nearHashes[x] = permutations[cells[x] % period];
+				farHashes[x] = permutations[(cells[x] + 1) % period];
+			}
+
+			for (int y = 0; y < HEIGHT; ++y) {
+				final int nearRow = cells[y] % period;
+				final int farRow = (cells[y] + 1) % period;
+				final double dy = offsets[y];
+				final double nearFadeY = nearFades[y];
+				final double farFadeY = farFades[y];
+				final int row = y * WIDTH;
+				for (int x = 0; x < WIDTH; ++x) {
+					final double dx = offsets[x];
+					final double nearFadeX = nearFades[x];
+					final double farFadeX = farFades[x];
+					//the four corners of the cell, in the order they've always been summed
+					double sample = surflet(nearHashes[x] + nearRow, dx, dy, nearFadeX, nearFadeY)
+								+ surflet(farHashes[x] + nearRow, dx - 1, dy, farFadeX, nearFadeY)
+								+ surflet(nearHashes[x] + farRow, dx, dy - 1, nearFadeX, farFadeY)
+								+ surflet(farHashes[x] + farRow, dx - 1, dy - 1, farFadeX, farFadeY);
+					noise[row + x] += weight * sample;
+				}
+			}
+		}
+
+		return noise;
+	}
+
+	/**
+	 * the contribution of one corner of a cell
+	 *
+	 * @param hashIndex index into the permutation picking the corner's gradient, clamped to its range
+	 */
+	private double surflet(int hashIndex, double dx, double dy, double fadeX, double fadeY) {
+		if (hashIndex >= NOISE_PERIOD) {
+			hashIndex = NOISE_PERIOD - 1;
+		}
+		else if (hashIndex < 0) {
+			hashIndex = 0;
+		}
+		final int hash = permutations[hashIndex];
+
+		return fadeX * fadeY * (dx * GRADIENT_X[hash] + dy * GRADIENT_Y[hash]);
+	}
+}
@@ -0,0 +1,99 @@
+package ca.rk.mappalinguarum.util.textures.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.rk.mappalinguarum.util.textures.TilingNoise;
+
+
+/**
+ * test class for TilingNoise class
+ *
+ * @author RK
+ *
+ */
+
+public class TilingNoiseTest {
+
+	private static final int NOISE_PERIOD = 32;
+	private static final double FREQUENCY = 1 / 16.0;
+	private static final int OCTAVES = 3;
+
+	private int[] permutations;
+
+	/**
+	 * test that the table-driven noise matches noise computed pixel by pixel from the formulas
+	 */
+	@Test
+	public void testGenerate() {
+		for (long seed = 0; seed < 20; ++seed) {
+			double[] noise = new TilingNoise( new Random(seed) ).generate();
+			shufflePermutations( new Random(seed) );
+			for (int y = 0; y < TilingNoise.HEIGHT; ++y) {
+				for (int x = 0; x < TilingNoise.WIDTH; ++x) {
+					double expected = fBm(x * FREQUENCY, y * FREQUENCY, (int) (TilingNoise.WIDTH * FREQUENCY), OCTAVES);
+					assertEquals(expected, noise[y * TilingNoise.WIDTH + x], 1e-12);
+				}
+			}
+		}
+	}
+
+	/**
+	 * test that noise stays within [-1, 1], and that different permutations give different noise
+	 */
+	@Test
+	public void testRange() {
+		double[] a = new TilingNoise( new Random(1) ).generate();
+		double[] b = new TilingNoise( new Random(2) ).generate();
+		boolean isDifferent = false;
+		for (int i = 0; i < a.length; ++i) {
+			assertTrue(a[i] >= -1 && a[i] <= 1);
+			isDifferent |= a[i] != b[i];
+		}
+		assertTrue(isDifferent);
+	}
+
+	private void shufflePermutations(Random rng) {
+		permutations = new int[NOISE_PERIOD];
+		for (int i = 0; i < NOISE_PERIOD; ++i) {
+			permutations[i] = i;
+		}
+		for (int i = NOISE_PERIOD - 1; i > 0; --i) {
+			int index = rng.nextInt(i + 1);
+			int temp = permutations[index];
+			permutations[index] = permutations[i];
+			permutations[i] = temp;
+		}
+	}
+
+	private double surflet(double x, double y, int gridX, int gridY, int period) {
+		double distX = Math.abs(x - gridX);
+		double distY = Math.abs(y - gridY);
+		double polyX = 1 - 6 * Math.pow(distX, 5) + 15 * Math.pow(distX, 4) - 10 * Math.pow(distX, 3);
+		double polyY = 1 - 6 * Math.pow(distY, 5) + 15 * Math.pow(distY, 4) - 10 * Math.pow(distY, 3);
+		int hashIndex = Math.max(0, Math.min(NOISE_PERIOD - 1, permutations[gridX % period] + gridY % period));
+		int hash = permutations[hashIndex];
+		double gradX = Math.cos((hash + 1) * 2 * Math.PI / NOISE_PERIOD);
+		double gradY = Math.sin((hash + 1) * 2 * Math.PI / NOISE_PERIOD);
+
+		return polyX * polyY * ((x - gridX) * gradX + (y - gridY) * gradY);
+	}
+
+	private double fBm(double x, double y, int period, int octaves) {
+		double result = 0;
+		for (int i = 1; i <= octaves; ++i) {
+			double sx = x * Math.pow(2, i);
+			double sy = y * Math.pow(2, i);
+			int p = period * (int) Math.pow(2, i);
+			int iX = (int) sx;
+			int iY = (int) sy;
+			result += Math.pow(0.5, i) * (surflet(sx, sy, iX, iY, p) + surflet(sx, sy, iX + 1, iY, p)
+										+ surflet(sx, sy, iX, iY + 1, p) + surflet(sx, sy, iX + 1, iY + 1, p));
+		}
+
+		return result;
+	}
+}
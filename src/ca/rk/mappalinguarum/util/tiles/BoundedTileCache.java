@@ -0,0 +1,219 @@
+package ca.rk.mappalinguarum.util.tiles;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileCache;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
+
+/**
+ * an in-memory tile cache bounded by the memory its images take up rather than by a number of tiles
+ *
+ * each tile is charged width x height x 4 bytes for its image, placeholders included, but not for the
+ * loading and error images all tiles share; a tile's charge is brought up to date whenever the tile is
+ * added or looked up, since its image is set by a loader thread some time after it's added, and the least
+ * recently used tiles are evicted until the total is within the budget again; with overflow on, evicted
+ * tiles are kept behind soft references, which the garbage collector clears only when memory runs short,
+ * and a tile looked up again before that is taken back in without being loaded again
+ *
+ * peek() finds a tile without counting as a use of it, for callers that only look around for something
+ * to stand in for a missing tile, so neither the statistics nor the eviction order follow repaints
+ *
+ * the tile loaders and the map lock the cache itself around compound operations, so every method is
+ * synchronized on it too
+ *
+ * @author RK
+ *
+ */
+public class BoundedTileCache implements TileCache {
+
+	/**
+	 * 64 MB, or 256 tiles of 256 x 256
+	 */
+	public static final long DEFAULT_BUDGET = 64L << 20;
+	private static final int BYTES_PER_PIXEL = 4;
+
+	private long budget;
+	private boolean isOverflowing;
+	/**
+	 * from least to most recently used; a tile is moved to the end by hand when it's used, so peek() can leave it be
+	 */
+	private LinkedHashMap<String, Resident> entries = new LinkedHashMap<String, Resident>();
+	private HashMap<String, Overflow> overflow = new HashMap<String, Overflow>();
+	private ReferenceQueue<Tile> cleared = new ReferenceQueue<Tile>();
+	private long residentBytes = 0;
+
+	private long hitCount = 0;
+	private long overflowHitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+	/**
+	 * constructs an empty BoundedTileCache
+	 *
+	 * @param b budget in bytes
+	 * @param o if true, keep evicted tiles behind soft references
+	 */
+	public BoundedTileCache(long b, boolean o) {
+		budget = b;
+		isOverflowing = o;
+	}
+
+	/**
+	 * @return the tile, or null if it isn't cached; a tile found in the overflow is put back in the cache
+	 */
+	@Override
+	public synchronized Tile getTile(TileSource source, int x, int y, int zoom) {
+		final String key = Tile.getTileKey(source, x, y, zoom);
+		Resident entry = entries.remove(key);
+		if (entry != null) {
+			entries.put(key, entry);
+			++hitCount;
+			charge(entry);
+			evict();
+			return entry.tile;
+		}
+
+		purgeOverflow();
+		Overflow ref = overflow.remove(key);
+		Tile tile = ref == null ? null : ref.get();
+		if (tile == null) {
+			++missCount;
+			return null;
+		}
+		++overflowHitCount;
+		put(key, tile);
+		return tile;
+	}
+
+	/**
+	 * @return the tile, or null if it's neither cached nor in the overflow; unlike getTile, nothing is
+	 * counted, the tile keeps its place in the eviction order and an overflow tile stays in the overflow
+	 */
+	public synchronized Tile peek(TileSource source, int x, int y, int zoom) {
+		final String key = Tile.getTileKey(source, x, y, zoom);
+		Resident entry = entries.get(key);
+		if (entry != null) {
+			return entry.tile;
+		}
+		Overflow ref = overflow.get(key);
+		return ref == null ? null : ref.get();
+	}
+
+	@Override
+	public synchronized void addTile(Tile tile) {
+		put(tile.getKey(), tile);
+	}
+
+	private void put(String key, Tile tile) {
+		Resident entry = new Resident(tile);
+		Resident old = entries.remove(key);
+		entries.put(key, entry);
+		if (old != null) {
+			residentBytes -= old.bytes;
+		}
+		overflow.remove(key);
+		charge(entry);
+		evict();
+	}
+
+	/**
+	 * bring an entry's charge up to date with its tile's image
+	 */
+	private void charge(Resident entry) {
+		BufferedImage image = entry.tile.getImage();
+		final long bytes = image == null || image == Tile.LOADING_IMAGE || image == Tile.ERROR_IMAGE ? 0
+				: (long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+		residentBytes += bytes - entry.bytes;
+		entry.bytes = bytes;
+	}
+
+	/**
+	 * evict least recently used tiles, except the most recent, until the cache is within its budget
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Resident>> it = entries.entrySet().iterator();
+		while (residentBytes > budget && entries.size() > 1) {
+			Map.Entry<String, Resident> eldest = it.next();
+			it.remove();
+			residentBytes -= eldest.getValue().bytes;
+			++evictionCount;
+			if (isOverflowing) {
+				overflow.put( eldest.getKey(), new Overflow(eldest.getKey(), eldest.getValue().tile, cleared) );
+			}
+		}
+	}
+
+	/**
+	 * forget overflow entries whose tiles have been collected
+	 */
+	private void purgeOverflow() {
+		Overflow ref;
+		while ( (ref = (Overflow) cleared.poll()) != null ) {
+			if (overflow.get(ref.key) == ref) {
+				overflow.remove(ref.key);
+			}
+		}
+	}
+
+	/**
+	 * drop every tile, including the overflow
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		overflow.clear();
+		residentBytes = 0;
+	}
+
+	//accessors
+	/**
+	 * @return how many tiles are held in the cache proper, not counting the overflow
+	 */
+	@Override
+	public synchronized int getTileCount() { return entries.size(); }
+	public synchronized int getOverflowCount() { purgeOverflow(); return overflow.size(); }
+	public synchronized long getBudget() { return budget; }
+	public synchronized long getResidentBytes() { return residentBytes; }
+	public synchronized long getHitCount() { return hitCount; }
+	/**
+	 * @return how many lookups found their tile only in the overflow
+	 */
+	public synchronized long getOverflowHitCount() { return overflowHitCount; }
+	public synchronized long getMissCount() { return missCount; }
+	public synchronized long getEvictionCount() { return evictionCount; }
+
+	/**
+	 * @param b budget in bytes; takes effect at the next lookup or addition
+	 */
+	public synchronized BoundedTileCache setBudget(long b) { budget = b; return this; }
+
+	/**
+	 * a cached tile and what it was last charged
+	 */
+	private static final class Resident {
+		private final Tile tile;
+		private long bytes = 0;
+
+		private Resident(Tile tile) {
+			this.tile = tile;
+		}
+	}
+
+	/**
+	 * a soft reference to an evicted tile that remembers its key, so it can be purged once cleared
+	 */
+	private static final class Overflow extends SoftReference<Tile> {
+		private final String key;
+
+		private Overflow(String key, Tile tile, ReferenceQueue<Tile> queue) {
+			super(tile, queue);
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,372 @@
+package ca.rk.mappalinguarum.util.tiles;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.openstreetmap.gui.jmapviewer.OsmFileCacheTileLoader;
+import org.openstreetmap.gui.jmapviewer.OsmTileLoader;
+import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileCache;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileLoader;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
+
+/**
+ * loads tiles from a directory cache, or from their tile server when they're missing or stale, and
+ * gives every tile an image that is ready to paint
+ *
+ * JMapViewer's loaders hand a tile whatever ImageIO decodes, which for most tile servers is an indexed
+ * image that has to be converted every time it's painted; here the image is decoded and converted to the
+ * screen's own format on the thread running the job, and only then set on the tile, so the event thread
+ * never sees an image that isn't paint-ready; at most maxFetches jobs talk to tile servers at once, however
+ * many threads run jobs, while jobs that find their tile on disk don't wait for them
+ *
+ * the directory cache is laid out as OsmFileCacheTileLoader lays it out, so the two share a cache;
+ * a stale tile is shown while it's fetched again, and kept if the fetch fails; a loader made with a TilePack
+ * is offline instead, and loads tiles from the pack alone, without touching the network or the filesystem
+ *
+ * @author RK
+ *
+ */
+public class DecodingTileLoader implements TileLoader {
+
+	/**
+	 * how many tile server requests may be open at once by default, as tile usage policies ask
+	 */
+	public static final int DEFAULT_MAX_FETCHES = 2;
+	private static final int TIMEOUT = 30000;
+
+	private TileLoaderListener listener;
+	private File cacheDir;
+	private TilePack pack;
+	private long maxFileAge = OsmFileCacheTileLoader.FILE_AGE_ONE_WEEK;
+	private Semaphore fetchPermits;
+	/**
+	 * keys of the tiles a job is working on; Tile.isLoading() is public, but JMapViewer's setter for the
+	 * flag isn't visible outside its package, so loaders here can't claim a tile through it
+	 */
+	private Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+	private AtomicLong fetchCount = new AtomicLong();
+	private AtomicLong diskCount = new AtomicLong();
+	private AtomicLong convertedCount = new AtomicLong();
+
+	/**
+	 * constructs a DecodingTileLoader using JMapViewer's default cache directory
+	 *
+	 * @param l the listener to notify of loaded tiles, and whose cache holds them
+	 * @throws SecurityException if the default cache directory can't be looked up
+	 * @throws IOException if the cache directory doesn't exist and can't be created
+	 */
+	public DecodingTileLoader(TileLoaderListener l) throws SecurityException, IOException {
+		this(l, OsmFileCacheTileLoader.getDefaultCacheDir(), DEFAULT_MAX_FETCHES);
+	}
+
+	/**
+	 * constructs a DecodingTileLoader
+	 *
+	 * @param l the listener to notify of loaded tiles, and whose cache holds them
+	 * @param dir the directory to cache tiles in
+	 * @param maxFetches how many tile server requests may be open at once
+	 * @throws IOException if the cache directory doesn't exist and can't be created
+	 */
+	public DecodingTileLoader(TileLoaderListener l, File dir, int maxFetches) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create tile cache directory " + dir);
+		}
+		listener = l;
+		cacheDir = dir;
+		fetchPermits = new Semaphore(maxFetches, true);
+	}
+
+	/**
+	 * constructs an offline DecodingTileLoader, which loads tiles from a pack and nowhere else
+	 *
+	 * @param l the listener to notify of loaded tiles, and whose cache holds them
+	 * @param p the pack to load tiles from
+	 */
+	public DecodingTileLoader(TileLoaderListener l, TilePack p) {
+		listener = l;
+		pack = p;
+	}
+
+	/**
+	 * @return a job that loads the tile, if it's in the listener's cache and isn't loaded or loading
+	 */
+	@Override
+	public Runnable createTileLoaderJob(TileSource source, int x, int y, int zoom) {
+		return () -> load(source, x, y, zoom);
+	}
+
+	private void load(TileSource source, int x, int y, int zoom) {
+		TileCache cache = listener.getTileCache();
+		Tile tile;
+		//the same lock JMapViewer's loaders take on the cache
+		synchronized (cache) {
+			tile = cache.getTile(source, x, y, zoom);
+			if (tile == null || tile.isLoaded() || tile.isLoading() || !inProgress.add(tile.getKey())) {
+				return;
+			}
+		}
+
+		try {
+			if (pack != null) {
+				loadFromPack(tile);
+				return;
+			}
+
+			File file = getTileFile(tile);
+			boolean isShown = false;
+			if (file.isFile()) {
+				diskCount.incrementAndGet();
+				try {
+					finish( tile, decode(Files.readAllBytes(file.toPath())) );
+					isShown = true;
+					if (System.currentTimeMillis() - file.lastModified() < maxFileAge) {
+						return;
+					}
+				}
+				catch (IOException e) {
+					//a damaged file is fetched again, and replaced
+				}
+			}
+
+			byte[] data;
+			BufferedImage image;
+			try {
+				data = fetch(tile);
+				image = decode(data);
+			}
+			catch (IOException e) {
+				//a stale tile is better than none
+				if (!isShown) {
+					throw e;
+				}
+				return;
+			}
+			finish(tile, image);
+			try {
+				file.getParentFile().mkdirs();
+				Files.write(file.toPath(), data);
+			}
+			catch (IOException e) {
+				//the tile is shown all the same, and is fetched again next time
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			tile.setError( e.getMessage() );
+			tile.setLoaded(true);
+			listener.tileLoadingFinished(tile, false);
+		}
+		finally {
+			inProgress.remove( tile.getKey() );
+		}
+	}
+
+	/**
+	 * @throws IOException if the pack doesn't have the tile, or its image can't be decoded
+	 */
+	private void loadFromPack(Tile tile) throws IOException {
+		ByteBuffer data = pack.getTileData( tile.getZoom(), tile.getXtile(), tile.getYtile() );
+		if (data == null) {
+			throw new IOException("Tile " + tile.getKey() + " is not in the tile pack");
+		}
+		diskCount.incrementAndGet();
+		finish( tile, decode( new ByteBufferInputStream(data) ) );
+	}
+
+	/**
+	 * set a paint-ready image on a tile and tell the listener
+	 */
+	private void finish(Tile tile, BufferedImage image) {
+		tile.setImage(image);
+		tile.setLoaded(true);
+		listener.tileLoadingFinished(tile, true);
+	}
+
+	/**
+	 * download a tile's image, waiting for a permit first
+	 *
+	 * @return the image file as served
+	 * @throws IOException if the server can't be reached, or doesn't have the tile
+	 */
+	private byte[] fetch(Tile tile) throws IOException {
+		try {
+			fetchPermits.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting to fetch tile " + tile.getKey(), e);
+		}
+		try {
+			fetchCount.incrementAndGet();
+			URLConnection connection = new URL( tile.getUrl() ).openConnection();
+			connection.setRequestProperty("User-agent", OsmTileLoader.USER_AGENT);
+			connection.setRequestProperty("Accept", OsmTileLoader.ACCEPT);
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+			if (connection instanceof HttpURLConnection) {
+				final int status = ( (HttpURLConnection) connection ).getResponseCode();
+				if (status != HttpURLConnection.HTTP_OK) {
+					throw new IOException("HTTP " + status + " fetching tile " + tile.getKey());
+				}
+			}
+			try (InputStream in = connection.getInputStream()) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int count;
+				while ( (count = in.read(buffer)) != -1 ) {
+					out.write(buffer, 0, count);
+				}
+				return out.toByteArray();
+			}
+		}
+		finally {
+			fetchPermits.release();
+		}
+	}
+
+	/**
+	 * decode an image file and convert it to the screen's format
+	 *
+	 * @throws IOException if the data isn't an image ImageIO can read
+	 */
+	private BufferedImage decode(byte[] data) throws IOException {
+		return decode( new ByteArrayInputStream(data) );
+	}
+
+	private BufferedImage decode(InputStream in) throws IOException {
+		BufferedImage image;
+		try {
+			image = ImageIO.read(in);
+		}
+		//some of ImageIO's readers throw runtime exceptions on damaged data
+		catch (RuntimeException e) {
+			throw new IOException("Damaged tile image", e);
+		}
+		if (image == null) {
+			throw new IOException("Unreadable tile image");
+		}
+		return toCompatibleImage(image);
+	}
+
+	/**
+	 * @return the input image if it already has the format images are fastest drawn in, otherwise a copy in it;
+	 * that's the default screen's format, or packed integer pixels without a screen
+	 */
+	public BufferedImage toCompatibleImage(BufferedImage image) {
+		final int transparency = image.getColorModel().getTransparency();
+		BufferedImage compatible;
+		if (GraphicsEnvironment.isHeadless()) {
+			final int type = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+			if (image.getType() == type) {
+				return image;
+			}
+			compatible = new BufferedImage(image.getWidth(), image.getHeight(), type);
+		}
+		else {
+			GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration();
+			if ( image.getColorModel().equals( gc.getColorModel(transparency) ) ) {
+				return image;
+			}
+			compatible = gc.createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+		}
+
+		Graphics2D g2d = compatible.createGraphics();
+		g2d.drawImage(image, 0, 0, null);
+		g2d.dispose();
+		convertedCount.incrementAndGet();
+		return compatible;
+	}
+
+	/**
+	 * @return where a tile is cached, as OsmFileCacheTileLoader names it
+	 */
+	private File getTileFile(Tile tile) {
+		File dir = new File( cacheDir, tile.getSource().getName().replaceAll("[\\\\/:*?\"<>|]", "_") );
+		return new File(dir, tile.getZoom() + "_" + tile.getXtile() + "_" + tile.getYtile() + "."
+				+ tile.getSource().getTileType());
+	}
+
+	//accessors
+	/**
+	 * @return the cache directory, or null if this loader is offline
+	 */
+	public File getCacheDir() { return cacheDir; }
+	/**
+	 * @return the pack tiles are loaded from, or null if this loader is online
+	 */
+	public TilePack getTilePack() { return pack; }
+	public long getMaxFileAge() { return maxFileAge; }
+	/**
+	 * @return how many tiles have been requested from tile servers
+	 */
+	public long getFetchCount() { return fetchCount.get(); }
+	/**
+	 * @return how many tiles have been read from the cache directory or the pack
+	 */
+	public long getDiskCount() { return diskCount.get(); }
+	/**
+	 * @return how many decoded images weren't in a paint-ready format
+	 */
+	public long getConvertedCount() { return convertedCount.get(); }
+
+	/**
+	 * @param age in milliseconds, how old a cached tile may get before it's fetched again
+	 */
+	public DecodingTileLoader setMaxFileAge(long age) { maxFileAge = age; return this; }
+
+	/**
+	 * reads the remaining bytes of a buffer, so that ImageIO can decode straight from a mapped file
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			final int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
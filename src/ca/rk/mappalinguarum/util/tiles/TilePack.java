@@ -0,0 +1,119 @@
+package ca.rk.mappalinguarum.util.tiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * a read-only set of tile images in a single file, mapped into memory, so that looking a tile up
+ * takes no filesystem calls
+ *
+ * layout, big-endian:
+ * header - MAGIC, VERSION, tile count, maximum zoom level, all ints
+ * index - per tile, sorted by key: key (long), offset of its image from the start of the file (long),
+ * length of its image (int)
+ * images - the tile image files, as they were served, one after another
+ *
+ * a pack is limited to 2 GB, the most a single mapping can hold; every index entry is checked to lie
+ * within the file when the pack is opened, so a damaged pack is refused rather than failing lookups;
+ * TilePackBuilder writes packs
+ *
+ * @author RK
+ *
+ */
+public class TilePack {
+
+	public static final int MAGIC = 0x4D4C5450;	//"MLTP"
+	public static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int INDEX_ENTRY_SIZE = 20;
+
+	private File file;
+	private MappedByteBuffer buffer;
+	private int tileCount;
+	private int maxZoom;
+
+	/**
+	 * open and map a pack file
+	 *
+	 * @param f the pack file
+	 * @throws IOException if the file can't be read, isn't a tile pack, or is truncated or damaged
+	 */
+	public TilePack(File f) throws IOException {
+		file = f;
+		try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Tile pack " + f + " is over 2 GB");
+			}
+			//the mapping stays valid once the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException(f + " is not a tile pack");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Tile pack " + f + " has unsupported version " + buffer.getInt(4));
+		}
+		tileCount = buffer.getInt(8);
+		maxZoom = buffer.getInt(12);
+		if (tileCount < 0 || HEADER_SIZE + (long) tileCount * INDEX_ENTRY_SIZE > buffer.capacity()) {
+			throw new IOException("Tile pack " + f + " is truncated");
+		}
+		for (int i = 0; i < tileCount; ++i) {
+			final int entry = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+			final long offset = buffer.getLong(entry + 8);
+			final int length = buffer.getInt(entry + 16);
+			if (offset < 0 || length < 0 || offset + (long) length > buffer.capacity()) {
+				throw new IOException("Tile pack " + f + " has a damaged index entry for tile " + i);
+			}
+		}
+	}
+
+	/**
+	 * @return the image file of a tile, as a read-only view of the mapping, or null if the pack doesn't have it
+	 */
+	public ByteBuffer getTileData(int zoom, int x, int y) {
+		final long key = toKey(zoom, x, y);
+		int low = 0;
+		int high = tileCount - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int entry = HEADER_SIZE + mid * INDEX_ENTRY_SIZE;
+			final long midKey = buffer.getLong(entry);
+			if (midKey < key) {
+				low = mid + 1;
+			}
+			else if (midKey > key) {
+				high = mid - 1;
+			}
+			else {
+				//checked against the file's size when the pack was opened
+				final int offset = (int) buffer.getLong(entry + 8);
+				final int length = buffer.getInt(entry + 16);
+				ByteBuffer data = buffer.asReadOnlyBuffer();
+				data.position(offset).limit(offset + length);
+				return data.slice();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * the one key layout for tile positions, shared by packs, the load scheduler and the prefetcher
+	 * 
+	 * @return a tile position packed into a long that sorts by zoom, then x, then y; x and y are below
+	 * 2^22 at any zoom level JMapViewer allows
+	 */
+	public static long toKey(int zoom, int x, int y) {
+		return (long) zoom << 48 | (long) x << 24 | y;
+	}
+
+	//accessors
+	public File getFile() { return file; }
+	public int getTileCount() { return tileCount; }
+	public int getMaxZoom() { return maxZoom; }
+}
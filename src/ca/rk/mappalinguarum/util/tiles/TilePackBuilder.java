@@ -0,0 +1,120 @@
+package ca.rk.mappalinguarum.util.tiles;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * writes a TilePack from a tile cache directory, as laid out by OsmFileCacheTileLoader and DecodingTileLoader
+ *
+ * usage: java ca.rk.mappalinguarum.util.tiles.TilePackBuilder <tile source directory> <pack file>
+ * where the tile source directory is the one named after the tile source, e.g. .../JMapViewerTiles/Mapnik
+ *
+ * @author RK
+ *
+ */
+public class TilePackBuilder {
+
+	private static final Pattern TILE_FILE_NAME = Pattern.compile("(\\d+)_(\\d+)_(\\d+)\\.png");
+
+	/**
+	 * build a pack from the command line
+	 *
+	 * @param args tile source directory, then pack file
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("usage: TilePackBuilder <tile source directory> <pack file>");
+			System.exit(2);
+		}
+		try {
+			final int count = build( new File(args[0]), new File(args[1]) );
+			System.out.println("Packed " + count + " tiles into " + args[1]);
+		}
+		catch (IOException e) {
+			System.err.println("Failed to build tile pack: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * write every tile image in a directory into a pack; files that aren't named like tiles are skipped
+	 *
+	 * @param dir the directory of one tile source
+	 * @param pack the pack file to write, replacing any there
+	 * @return how many tiles were packed
+	 * @throws IOException if the directory can't be read, the pack can't be written, or it would be over 2 GB
+	 */
+	public static int build(File dir, File pack) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IOException("Cannot list tile directory " + dir);
+		}
+		List<Entry> entries = new ArrayList<Entry>();
+		int maxZoom = 0;
+		for (File f : files) {
+			Matcher m = TILE_FILE_NAME.matcher( f.getName() );
+			if (f.isFile() && m.matches()) {
+				final int zoom = Integer.parseInt( m.group(1) );
+				entries.add( new Entry(TilePack.toKey(zoom, Integer.parseInt( m.group(2) ), Integer.parseInt( m.group(3) )),
+						f, f.length()) );
+				maxZoom = Math.max(maxZoom, zoom);
+			}
+		}
+		entries.sort( Comparator.comparingLong(e -> e.key) );
+
+		long offset = TilePack.HEADER_SIZE + (long) entries.size() * TilePack.INDEX_ENTRY_SIZE;
+		for (Entry e : entries) {
+			e.offset = offset;
+			offset += e.length;
+		}
+		if (offset > Integer.MAX_VALUE) {
+			throw new IOException("Tiles in " + dir + " would make a pack over 2 GB");
+		}
+
+		try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(pack) ) )) {
+			out.writeInt(TilePack.MAGIC);
+			out.writeInt(TilePack.VERSION);
+			out.writeInt( entries.size() );
+			out.writeInt(maxZoom);
+			for (Entry e : entries) {
+				out.writeLong(e.key);
+				out.writeLong(e.offset);
+				out.writeInt( (int) e.length );
+			}
+			for (Entry e : entries) {
+				byte[] data = Files.readAllBytes( e.file.toPath() );
+				if (data.length != e.length) {
+					throw new IOException(e.file + " changed while the pack was written");
+				}
+				out.write(data);
+			}
+		}
+
+		return entries.size();
+	}
+
+	/**
+	 * a tile file and where it goes in the pack
+	 */
+	private static final class Entry {
+		private final long key;
+		private final File file;
+		private final long length;
+		private long offset;
+
+		private Entry(long key, File file, long length) {
+			this.key = key;
+			this.file = file;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package ca.rk.mappalinguarum.util.tiles.test;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
+import org.openstreetmap.gui.jmapviewer.tilesources.OsmTileSource;
+
+import ca.rk.mappalinguarum.util.tiles.BoundedTileCache;
+
+
+/**
+ * test class for BoundedTileCache
+ *
+ * @author RK
+ *
+ */
+
+public class BoundedTileCacheTest {
+
+	private static final int TILE_SIZE = 256;
+	private static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+	private TileSource source = new OsmTileSource.Mapnik();
+
+	/**
+	 * test that the least recently used tiles are evicted once images go over the budget
+	 */
+	@Test
+	public void testEviction() {
+		BoundedTileCache cache = new BoundedTileCache(3 * TILE_BYTES, false);
+		for (int x = 0; x < 3; ++x) {
+			cache.addTile( newTile(x) );
+		}
+		assertEquals(3 * TILE_BYTES, cache.getResidentBytes());
+
+		//touch 0, so 1 is the least recently used
+		assertNotNull( cache.getTile(source, 0, 0, 2) );
+		cache.addTile( newTile(3) );
+		assertEquals(3, cache.getTileCount());
+		assertEquals(3 * TILE_BYTES, cache.getResidentBytes());
+		assertEquals(1, cache.getEvictionCount());
+		assertNull( cache.getTile(source, 1, 0, 2) );
+		assertNotNull( cache.getTile(source, 0, 0, 2) );
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	/**
+	 * test that a tile is charged for an image set after it was added, the next time it's looked up
+	 */
+	@Test
+	public void testLateImage() {
+		BoundedTileCache cache = new BoundedTileCache(TILE_BYTES, false);
+		Tile tile = new Tile(source, 0, 0, 2);
+		cache.addTile(tile);
+		assertEquals(0, cache.getResidentBytes());
+
+		tile.setImage( new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB) );
+		cache.getTile(source, 0, 0, 2);
+		assertEquals(TILE_BYTES, cache.getResidentBytes());
+
+		cache.addTile( newTile(1) );
+		assertEquals(TILE_BYTES, cache.getResidentBytes());
+		assertEquals(1, cache.getTileCount());
+	}
+
+	/**
+	 * test that an evicted tile still referenced elsewhere is taken back from the overflow
+	 */
+	@Test
+	public void testOverflow() {
+		BoundedTileCache cache = new BoundedTileCache(TILE_BYTES, true);
+		Tile first = newTile(0);
+		cache.addTile(first);
+		cache.addTile( newTile(1) );
+		assertEquals(1, cache.getTileCount());
+		assertEquals(1, cache.getOverflowCount());
+
+		assertSame( first, cache.getTile(source, 0, 0, 2) );
+		assertEquals(1, cache.getOverflowHitCount());
+		assertEquals(0, cache.getMissCount());
+		assertEquals(1, cache.getTileCount());
+	}
+
+	/**
+	 * test that peeking at a tile neither counts nor saves it from eviction
+	 */
+	@Test
+	public void testPeek() {
+		BoundedTileCache cache = new BoundedTileCache(2 * TILE_BYTES, false);
+		Tile first = newTile(0);
+		cache.addTile(first);
+		cache.addTile( newTile(1) );
+
+		assertSame( first, cache.peek(source, 0, 0, 2) );
+		assertNull( cache.peek(source, 2, 0, 2) );
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+
+		//0 is still the least recently used
+		cache.addTile( newTile(2) );
+		assertNull( cache.peek(source, 0, 0, 2) );
+		assertNotNull( cache.peek(source, 1, 0, 2) );
+	}
+
+	private Tile newTile(int x) {
+		return new Tile(source, x, 0, 2, new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB));
+	}
+}
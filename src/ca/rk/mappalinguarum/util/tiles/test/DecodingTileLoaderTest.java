@@ -0,0 +1,247 @@
+package ca.rk.mappalinguarum.util.tiles.test;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openstreetmap.gui.jmapviewer.MemoryTileCache;
+import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileCache;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
+import org.openstreetmap.gui.jmapviewer.tilesources.AbstractOsmTileSource;
+
+import com.sun.net.httpserver.HttpServer;
+
+import ca.rk.mappalinguarum.util.tiles.DecodingTileLoader;
+import ca.rk.mappalinguarum.util.tiles.TilePack;
+import ca.rk.mappalinguarum.util.tiles.TilePackBuilder;
+
+
+/**
+ * test class for DecodingTileLoader, against a stand-in tile server on the loopback interface
+ *
+ * @author RK
+ *
+ */
+
+public class DecodingTileLoaderTest implements TileLoaderListener {
+
+	private static final int MAX_FETCHES = 2;
+	private static final int DELAY = 50;
+
+	private HttpServer server;
+	private TileSource source;
+	private File cacheDir;
+	private byte[] png;
+	private MemoryTileCache cache = new MemoryTileCache();
+	private List<Tile> finished = new ArrayList<Tile>();
+	private AtomicInteger requestCount = new AtomicInteger();
+	private AtomicInteger openCount = new AtomicInteger();
+	private AtomicInteger maxOpenCount = new AtomicInteger();
+
+	/**
+	 * start a server that answers /0/... with an indexed PNG after DELAY milliseconds and anything else with 404,
+	 * keeping count of how many requests are open at once
+	 */
+	@Before
+	public void setUp() throws IOException {
+		BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_INDEXED,
+				new IndexColorModel(8, 2, new byte[] { 0, -1 }, new byte[] { 0, 0 }, new byte[] { 0, 0 }));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		png = out.toByteArray();
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			requestCount.incrementAndGet();
+			maxOpenCount.accumulateAndGet(openCount.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(DELAY);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			openCount.decrementAndGet();
+			if (exchange.getRequestURI().getPath().startsWith("/0/")) {
+				exchange.sendResponseHeaders(200, png.length);
+				try (OutputStream body = exchange.getResponseBody()) {
+					body.write(png);
+				}
+			}
+			else {
+				exchange.sendResponseHeaders(404, -1);
+			}
+			exchange.close();
+		});
+		server.setExecutor( Executors.newCachedThreadPool() );
+		server.start();
+
+		source = new AbstractOsmTileSource("Stand-in", "http://127.0.0.1:" + server.getAddress().getPort()) {
+			@Override
+			public TileUpdate getTileUpdate() {
+				return TileUpdate.None;
+			}
+		};
+		cacheDir = Files.createTempDirectory("tiles").toFile();
+	}
+
+	/**
+	 * stop the server and delete the cache directory
+	 */
+	@After
+	public void tearDown() {
+		server.stop(0);
+		for (File dir : cacheDir.listFiles()) {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+		cacheDir.delete();
+	}
+
+	/**
+	 * test that a fetched tile gets a paint-ready image, and is read from the cache directory the next time
+	 */
+	@Test
+	public void testLoad() throws IOException {
+		DecodingTileLoader loader = new DecodingTileLoader(this, cacheDir, MAX_FETCHES);
+		Tile tile = addTile(0, 0, 0);
+		loader.createTileLoaderJob(source, 0, 0, 0).run();
+		assertTrue( tile.isLoaded() );
+		assertFalse( tile.hasError() );
+		assertTrue( finished.contains(tile) );
+		assertNotEquals( BufferedImage.TYPE_BYTE_INDEXED, tile.getImage().getType() );
+		assertEquals(1, loader.getFetchCount());
+		assertEquals(1, loader.getConvertedCount());
+
+		//a loaded tile isn't loaded again
+		loader.createTileLoaderJob(source, 0, 0, 0).run();
+		assertEquals(1, requestCount.get());
+
+		cache.clear();
+		DecodingTileLoader next = new DecodingTileLoader(this, cacheDir, MAX_FETCHES);
+		tile = addTile(0, 0, 0);
+		next.createTileLoaderJob(source, 0, 0, 0).run();
+		assertTrue( tile.isLoaded() );
+		assertEquals(0, next.getFetchCount());
+		assertEquals(1, next.getDiskCount());
+		assertEquals(1, requestCount.get());
+	}
+
+	/**
+	 * test that a tile the server doesn't have ends up loaded with an error
+	 */
+	@Test
+	public void testMissingTile() throws IOException {
+		DecodingTileLoader loader = new DecodingTileLoader(this, cacheDir, MAX_FETCHES);
+		Tile tile = addTile(1, 1, 1);
+		loader.createTileLoaderJob(source, 1, 1, 1).run();
+		assertTrue( tile.isLoaded() );
+		assertTrue( tile.hasError() );
+	}
+
+	/**
+	 * test that a damaged file in the cache directory is fetched again and replaced, instead of failing the tile
+	 */
+	@Test
+	public void testDamagedFile() throws IOException {
+		File sourceDir = new File(cacheDir, source.getName());
+		sourceDir.mkdirs();
+		File file = new File(sourceDir, "0_0_0.png");
+		Files.write(file.toPath(), Arrays.copyOf(png, png.length / 2));
+
+		DecodingTileLoader loader = new DecodingTileLoader(this, cacheDir, MAX_FETCHES);
+		Tile tile = addTile(0, 0, 0);
+		loader.createTileLoaderJob(source, 0, 0, 0).run();
+		assertTrue( tile.isLoaded() );
+		assertFalse( tile.hasError() );
+		assertEquals(1, loader.getFetchCount());
+		assertArrayEquals( png, Files.readAllBytes(file.toPath()) );
+	}
+
+	/**
+	 * test that however many threads run jobs, no more than MAX_FETCHES requests are open at once
+	 */
+	@Test
+	public void testFetchLimit() throws IOException, InterruptedException {
+		DecodingTileLoader loader = new DecodingTileLoader(this, cacheDir, MAX_FETCHES);
+		List<Tile> tiles = new ArrayList<Tile>();
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 8; ++i) {
+			tiles.add( addTile(0, i, 0) );
+			threads.execute( loader.createTileLoaderJob(source, i, 0, 0) );
+		}
+		threads.shutdown();
+		assertTrue( threads.awaitTermination(10, TimeUnit.SECONDS) );
+
+		for (Tile tile : tiles) {
+			assertTrue( tile.isLoaded() );
+			assertFalse( tile.hasError() );
+		}
+		assertEquals(8, requestCount.get());
+		assertTrue(maxOpenCount.get() <= MAX_FETCHES);
+	}
+
+	/**
+	 * test that an offline loader loads tiles from its pack, and gives tiles it doesn't have an error,
+	 * without asking the server
+	 */
+	@Test
+	public void testOfflinePack() throws IOException {
+		File sourceDir = new File(cacheDir, source.getName());
+		sourceDir.mkdirs();
+		Files.write(new File(sourceDir, "0_0_0.png").toPath(), png);
+		File packFile = new File(cacheDir, "tiles.pack");
+		TilePackBuilder.build(sourceDir, packFile);
+
+		DecodingTileLoader loader = new DecodingTileLoader(this, new TilePack(packFile));
+		Tile tile = addTile(0, 0, 0);
+		Tile missing = addTile(1, 0, 0);
+		loader.createTileLoaderJob(source, 0, 0, 0).run();
+		loader.createTileLoaderJob(source, 0, 0, 1).run();
+		assertTrue( tile.isLoaded() );
+		assertFalse( tile.hasError() );
+		assertEquals(256, tile.getImage().getWidth());
+		assertTrue( missing.isLoaded() );
+		assertTrue( missing.hasError() );
+		assertEquals(0, requestCount.get());
+		packFile.delete();
+	}
+
+	private Tile addTile(int zoom, int x, int y) {
+		Tile tile = new Tile(source, x, y, zoom);
+		cache.addTile(tile);
+		return tile;
+	}
+
+	@Override
+	public synchronized void tileLoadingFinished(Tile tile, boolean success) {
+		finished.add(tile);
+	}
+
+	@Override
+	public TileCache getTileCache() {
+		return cache;
+	}
+}
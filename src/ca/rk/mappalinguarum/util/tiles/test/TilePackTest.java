@@ -0,0 +1,113 @@
+package ca.rk.mappalinguarum.util.tiles.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.rk.mappalinguarum.util.tiles.TilePack;
+import ca.rk.mappalinguarum.util.tiles.TilePackBuilder;
+
+
+/**
+ * test class for TilePack and TilePackBuilder
+ *
+ * @author RK
+ *
+ */
+
+public class TilePackTest {
+
+	/**
+	 * tiles to pack, as zoom, x, y
+	 */
+	private static final int[][] TILES = { { 3, 5, 2 }, { 1, 0, 1 }, { 3, 4, 7 }, { 12, 2047, 1365 }, { 3, 5, 1 } };
+
+	private File dir;
+	private File packFile;
+
+	/**
+	 * write a tile cache directory with a tile file for each of TILES, plus a file that isn't a tile
+	 */
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("tiles").toFile();
+		for (int[] t : TILES) {
+			Files.write( new File(dir, t[0] + "_" + t[1] + "_" + t[2] + ".png").toPath(), contents(t) );
+		}
+		Files.write( new File(dir, "3_5_2.tags").toPath(), new byte[] { 1, 2, 3 } );
+		packFile = File.createTempFile("tiles", ".pack");
+	}
+
+	/**
+	 * delete the directory and the pack
+	 */
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+		packFile.delete();
+	}
+
+	/**
+	 * test that every tile in the directory can be found in the pack with the same contents
+	 */
+	@Test
+	public void testBuildAndRead() throws IOException {
+		assertEquals( TILES.length, TilePackBuilder.build(dir, packFile) );
+		TilePack pack = new TilePack(packFile);
+		assertEquals(TILES.length, pack.getTileCount());
+		assertEquals(12, pack.getMaxZoom());
+
+		for (int[] t : TILES) {
+			ByteBuffer data = pack.getTileData(t[0], t[1], t[2]);
+			assertNotNull(data);
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			assertArrayEquals(contents(t), bytes);
+		}
+		assertNull( pack.getTileData(3, 5, 3) );
+		assertNull( pack.getTileData(0, 0, 0) );
+		assertNull( pack.getTileData(13, 0, 0) );
+	}
+
+	/**
+	 * test that a file that isn't a pack is refused
+	 */
+	@Test(expected = IOException.class)
+	public void testNotAPack() throws IOException {
+		Files.write( packFile.toPath(), new byte[] { 'P', 'N', 'G', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 } );
+		new TilePack(packFile);
+	}
+
+	/**
+	 * test that a pack whose index points past the end of the file is refused
+	 */
+	@Test(expected = IOException.class)
+	public void testDamagedIndex() throws IOException {
+		TilePackBuilder.build(dir, packFile);
+		byte[] bytes = Files.readAllBytes( packFile.toPath() );
+		ByteBuffer.wrap(bytes).putInt(16 + 16, Integer.MAX_VALUE);
+		Files.write(packFile.toPath(), bytes);
+		new TilePack(packFile);
+	}
+
+	/**
+	 * @return stand-in image data for a tile, different for each tile and of different lengths
+	 */
+	private byte[] contents(int[] t) {
+		byte[] data = new byte[10 + t[0] + t[2] % 7];
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = (byte) (t[0] * 31 + t[1] * 7 + t[2] + i);
+		}
+		return data;
+	}
+}